@@ -0,0 +1,79 @@
+package com.tdsata.ourappserver.benchmark;
+
+import com.tdsata.ourappserver.util.AESCipherEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AESCipherEngine与原先每个字段都执行Cipher.getInstance与cipher.init的加解密方式的对比.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AESCipherEngineBenchmark {
+    @Param({"16", "128", "4096"})
+    private int length;// 明文长度（字符数）
+    private Key key;
+    private String plaintext;
+    private String ciphertext;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        byte[] keyBytes = new byte[16];
+        for (int i = 0; i < keyBytes.length; i++) {
+            keyBytes[i] = (byte) (i * 31 + 7);
+        }
+        key = new SecretKeySpec(keyBytes, "AES");
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + i % 26));
+        }
+        plaintext = builder.toString();
+        ciphertext = AESCipherEngine.encrypt(key, plaintext);
+    }
+
+    @Benchmark
+    public String engineEncrypt() throws GeneralSecurityException {
+        return AESCipherEngine.encrypt(key, plaintext);
+    }
+
+    @Benchmark
+    public String engineDecrypt() throws GeneralSecurityException {
+        return AESCipherEngine.decrypt(key, ciphertext);
+    }
+
+    @Benchmark
+    public String perCallEncrypt() throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return new String(Base64.getEncoder().encode(cipher.doFinal(plaintext.getBytes())), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String perCallDecrypt() throws GeneralSecurityException {
+        byte[] decodeCiphertextBytes = Base64.getDecoder().decode(ciphertext.getBytes(StandardCharsets.UTF_8));
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.DECRYPT_MODE, key);
+        return new String(cipher.doFinal(decodeCiphertextBytes), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,75 @@
+package com.tdsata.ourappserver.benchmark;
+
+import com.github.aelstad.keccakj.fips202.SHA3_512;
+import com.tdsata.ourappserver.util.Keccak512Hasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keccak512Hasher与原先每次新建摘要对象、逐字节生成十六进制字符串并以String.equals比较的方式的对比.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Keccak512HasherBenchmark {
+    private String password;// 客户端上传的密码为原密码的Keccak512摘要
+    private String salt;
+    private String stored;
+
+    @Setup
+    public void setup() {
+        password = Keccak512Hasher.digestHex("TD-SATA", "");
+        salt = "aB3dE5gH7jK9mN1pQ3sT5vX7z";
+        stored = Keccak512Hasher.digestHex(password, salt);
+    }
+
+    @Benchmark
+    public String hasherDigestHex() {
+        return Keccak512Hasher.digestHex(password, salt);
+    }
+
+    @Benchmark
+    public boolean hasherVerify() {
+        return Keccak512Hasher.verify(stored, password, salt);
+    }
+
+    @Benchmark
+    public String legacyDigestHex() {
+        return legacyKeccak512Password(password, salt);
+    }
+
+    @Benchmark
+    public boolean legacyVerify() {
+        return stored.equals(legacyKeccak512Password(password, salt));
+    }
+
+    private static String legacyKeccak512Password(String password, String salt) {
+        SHA3_512 keccak512 = new SHA3_512();
+        return legacyToHexString(keccak512.digest((password + salt).getBytes()));
+    }
+
+    private static String legacyToHexString(byte[] data) {
+        StringBuilder strHexString = new StringBuilder();
+        for (byte aByte : data) {
+            String hex = Integer.toHexString(0xff & aByte);
+            if (hex.length() == 1) {
+                strHexString.append('0');
+            }
+            strHexString.append(hex);
+        }
+        return strHexString.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.tdsata.ourappserver;
+
+import com.tdsata.ourappserver.util.SQLTools;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 标识请求所属的客户端，供SQLTools按客户端判断查询是否需走主库.
+ * 账号在请求参数中加密传输，无法在解密前得知，因此以账号登录后的会话代替账号：
+ * 有会话id时以会话id标识，旧版客户端以其AES密钥字符串的散列值标识.
+ */
+@Component
+public class CurrentClientFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SQLTools.setCurrentClient(getClient(request));
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SQLTools.setCurrentClient(null);
+        }
+    }
+
+    private static String getClient(HttpServletRequest request) {
+        String sessionId = request.getParameter("sessionId");
+        if (sessionId != null && !sessionId.isEmpty()) {
+            return "session:" + sessionId;
+        }
+        String aesKeyStr = request.getParameter("aesKeyStr");
+        if (aesKeyStr != null && !aesKeyStr.isEmpty()) {
+            return "key:" + Integer.toHexString(aesKeyStr.hashCode());// 散列冲突只会使查询多走主库
+        }
+        return null;
+    }
+}
@@ -0,0 +1,185 @@
+package com.tdsata.ourappserver;
+
+import com.tdsata.ourappserver.util.MigrationRunner;
+import com.tdsata.ourappserver.util.SQLTools;
+import com.tdsata.ourappserver.util.SignInActivityCache;
+import com.tdsata.ourappserver.util.SignInMigration;
+import com.tdsata.ourappserver.util.Tools;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 启动时将数据库结构迁移至最新版本.
+ * 新部署的数据库由此创建全部数据表与索引；已有的数据库只补齐缺失的部分.
+ * 新的结构修改需追加为新版本，不可修改已发布的版本.
+ * 迁移在本Bean初始化时执行，控制器通过@DependsOn在其后创建，Web服务器在所有单例创建完成后才开始接受请求，
+ * 因此请求不会访问到迁移中的数据库；迁移失败时抛出异常，终止启动.
+ */
+@Component(DatabaseInitializer.beanName)
+public class DatabaseInitializer implements InitializingBean {
+    /**
+     * Bean名称，供依赖数据库结构的Bean在@DependsOn中引用.
+     */
+    public static final String beanName = "databaseInitializer";
+    private static final int indexPrefixLength = 191;// 长字符串字段索引的前缀长度（utf8mb4下不超过767字节）
+    private final Tools.MyLog myLog = new Tools.MyLog(DatabaseInitializer.class);
+    private final SQLTools sqlTools;
+
+    @Autowired
+    public DatabaseInitializer(JdbcTemplate jdbcTemplate) {
+        this.sqlTools = new SQLTools(jdbcTemplate);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        new MigrationRunner(sqlTools)
+                .add(1, "创建缺失的数据表", this::createTables)
+                .add(2, "为积分修改记录表与公告表添加自增id", this::addAutoIncrementIds)
+                .add(3, "签到状态迁移至签到记录表", this::migrateSignIn)
+                .add(4, "为常用查询条件字段添加索引", this::addIndexes)
+                .add(5, "清除不属于本部门签到活动的签到记录", this::removeForeignSignInRecords)
+                .run();
+        try {
+            SignInActivityCache.loadIds(sqlTools);
+        } catch (Exception e) {
+            myLog.e("加载签到活动id发生异常", e);
+        }
+    }
+
+    private void createTables(SQLTools sqlTools) {
+        sqlTools.executeAny("create table if not exists " + SQLTools.signInActivityInfo + " ("
+                + "id int not null auto_increment primary key, "
+                + "title varchar(30) not null, "
+                + "signInTime varchar(20) not null, "
+                + "continueTime int not null, "
+                + "department varchar(20) null, "
+                + "index idx_title (title), "
+                + "index idx_department (department))");
+        sqlTools.executeAny("create table if not exists " + SQLTools.departmentInfo + " ("
+                + "department varchar(20) not null primary key, "
+                + "info text null)");
+        SignInMigration signInMigration = new SignInMigration(sqlTools);
+        for (Tools.DepartmentEnum department : Tools.DepartmentEnum.values()) {
+            sqlTools.executeAny("create table if not exists " + department.getTableName() + " ("
+                    + "id int not null auto_increment primary key, "
+                    + "number varchar(20) not null, "
+                    + "name varchar(50) not null, "
+                    + "password varchar(128) not null, "
+                    + "salt varchar(64) not null, "
+                    + "flag varchar(4) not null default '0', "
+                    + "temp varchar(255) null, "
+                    + "count int not null default 0, "
+                    + "subject varchar(50) null, "
+                    + "sex varchar(10) null, "
+                    + "phone varchar(20) null, "
+                    + "qq varchar(20) null, "
+                    + "teacher varchar(50) null, "
+                    + "mail varchar(100) null, "
+                    + "mail_enable int null, "
+                    + "mail_verify_time varchar(20) null, "
+                    + "info_enable int null, "
+                    + "photo_path varchar(255) null, "
+                    + "unique key uk_number (number))");
+            sqlTools.executeAny("create table if not exists " + department.getAnnouncementTableName() + " ("
+                    + "id bigint not null auto_increment primary key, "
+                    + "number varchar(20) not null, "
+                    + "message varchar(1000) not null, "
+                    + "index idx_number (number), "
+                    + "index idx_message (message(" + indexPrefixLength + ")))");
+            sqlTools.executeAny("create table if not exists " + department.getChangeCountTableName() + " ("
+                    + "id bigint not null auto_increment primary key, "
+                    + "editor_number varchar(20) not null, "
+                    + "change_number varchar(20) not null, "
+                    + "change_value int not null, "
+                    + "description varchar(255) not null, "
+                    + "index idx_change_number (change_number), "
+                    + "index idx_editor_number (editor_number))");
+            signInMigration.ensureRecordTable(department);
+        }
+    }
+
+    private void addAutoIncrementIds(SQLTools sqlTools) {
+        for (Tools.DepartmentEnum department : Tools.DepartmentEnum.values()) {
+            ensureAutoIncrementId(department.getChangeCountTableName(), department.getChangeCountTableNameWithoutSymbol());
+            ensureAutoIncrementId(department.getAnnouncementTableName(), department.getAnnouncementTableNameWithoutSymbol());
+        }
+    }
+
+    private void migrateSignIn(SQLTools sqlTools) {
+        SignInMigration signInMigration = new SignInMigration(sqlTools);
+        signInMigration.ensureActivityDepartment();
+        for (Tools.DepartmentEnum department : Tools.DepartmentEnum.values()) {
+            signInMigration.migrate(department);
+        }
+    }
+
+    private void addIndexes(SQLTools sqlTools) {
+        ensureIndex(SQLTools.signInActivityInfo, "title");
+        ensureIndex(SQLTools.signInActivityInfo, "department");
+        ensureIndex(SQLTools.departmentInfo, "department");
+        for (Tools.DepartmentEnum department : Tools.DepartmentEnum.values()) {
+            ensureIndex(department.getTableNameWithoutSymbol(), "number");
+            ensureIndex(department.getAnnouncementTableNameWithoutSymbol(), "number");
+            ensureIndex(department.getAnnouncementTableNameWithoutSymbol(), "message");
+            ensureIndex(department.getChangeCountTableNameWithoutSymbol(), "change_number");
+            ensureIndex(department.getChangeCountTableNameWithoutSymbol(), "editor_number");
+            ensureIndex(department.getSignInRecordTableNameWithoutSymbol(), "number");
+        }
+    }
+
+    /**
+     * 旧版本的签到接口未校验活动所属部门，可能向其他部门活动的签到记录表写入记录，
+     * 这些记录不会随活动删除而清除，在此一次清除.
+     */
+    private void removeForeignSignInRecords(SQLTools sqlTools) {
+        for (Tools.DepartmentEnum department : Tools.DepartmentEnum.values()) {
+            int count = sqlTools.executeUpdate("delete from " + department.getSignInRecordTableName()
+                    + " where activity_id not in (select id from " + SQLTools.signInActivityInfo + " where department = ?)",
+                    department.name());
+            if (count > 0) {
+                myLog.i("已从" + department.getSignInRecordTableNameWithoutSymbol() + "清除" + count + "条签到记录");
+            }
+        }
+    }
+
+    /**
+     * 确保数据表有带索引的自增id字段，供按id分页查询使用.
+     */
+    private void ensureAutoIncrementId(String tableName, String tableNameWithoutSymbol) {
+        if (!sqlTools.hasTable(tableNameWithoutSymbol)) {
+            return;
+        }
+        if (!sqlTools.hasField(tableNameWithoutSymbol, "id")) {
+            if (sqlTools.hasPrimaryKey(tableNameWithoutSymbol)) {
+                sqlTools.executeAny("alter table " + tableName + " add id bigint not null auto_increment first, add unique key uk_id (id)");
+            } else {
+                sqlTools.executeAny("alter table " + tableName + " add id bigint not null auto_increment primary key first");
+            }
+        } else if (!sqlTools.hasIndexOn(tableNameWithoutSymbol, "id")) {
+            sqlTools.executeAny("alter table " + tableName + " add index idx_id (id)");
+        }
+    }
+
+    /**
+     * 确保数据表有以指定字段开头的索引，若无则添加.
+     * 长度超过索引前缀长度的字符串字段只索引前缀.
+     */
+    private void ensureIndex(String tableNameWithoutSymbol, String fieldName) {
+        if (!sqlTools.hasTable(tableNameWithoutSymbol) || !sqlTools.hasField(tableNameWithoutSymbol, fieldName)
+                || sqlTools.hasIndexOn(tableNameWithoutSymbol, fieldName)) {
+            return;
+        }
+        List<Long> length = sqlTools.querySQL("select CHARACTER_MAXIMUM_LENGTH from information_schema.COLUMNS"
+                        + " where TABLE_SCHEMA = database() and TABLE_NAME = ? and COLUMN_NAME = ?",
+                (rs, rowNum) -> rs.getObject(1) == null ? null : rs.getLong(1), tableNameWithoutSymbol, fieldName);
+        String keyPart = "`" + fieldName + "`";
+        if (length != null && length.get(0) != null && length.get(0) > indexPrefixLength) {
+            keyPart += "(" + indexPrefixLength + ")";
+        }
+        sqlTools.executeAny("alter table `" + tableNameWithoutSymbol + "` add index idx_" + fieldName + " (" + keyPart + ")");
+    }
+}
@@ -0,0 +1,35 @@
+package com.tdsata.ourappserver;
+
+import com.tdsata.ourappserver.util.ReadReplica;
+import com.tdsata.ourappserver.util.SQLTools;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 只读从库配置.
+ * 配置了ourapp.datasource.replica.url时创建从库连接池，只读接口的查询分流至从库；未配置时所有查询均走主库.
+ * 从库不注册为DataSource，避免替换Spring Boot自动配置的主库.
+ */
+@Configuration
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ourapp.datasource.replica", name = "url")
+    public ReadReplica readReplica(@Value("${ourapp.datasource.replica.url}") String url,
+                                   @Value("${ourapp.datasource.replica.username:${spring.datasource.username:}}") String username,
+                                   @Value("${ourapp.datasource.replica.password:${spring.datasource.password:}}") String password,
+                                   @Value("${ourapp.datasource.replica.maximum-pool-size:10}") int maximumPoolSize,
+                                   @Value("${ourapp.datasource.replica.read-your-writes-millis:3000}") long readYourWritesMillis) {
+        HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url).username(username).password(password).build();
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        SQLTools.setReadYourWritesMillis(readYourWritesMillis);
+        return new ReadReplica(dataSource);
+    }
+}
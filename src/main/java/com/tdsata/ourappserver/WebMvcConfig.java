@@ -0,0 +1,18 @@
+package com.tdsata.ourappserver;
+
+import com.tdsata.ourappserver.util.EncryptedResponseHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // 加密响应体需先于其他转换器匹配
+        converters.add(0, new EncryptedResponseHttpMessageConverter());
+    }
+}
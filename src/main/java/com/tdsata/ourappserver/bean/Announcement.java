@@ -0,0 +1,44 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.IOException;
+
+/**
+ * 部门公告.
+ */
+public class Announcement implements JsonWritable {
+    /**
+     * 查询公告所需的字段.
+     */
+    public static final String[] columns = {"id", "number", "message"};
+    /**
+     * 查询结果到公告的映射.
+     */
+    public static final RowMapper<Announcement> rowMapper = (rs, rowNum) ->
+            new Announcement(rs.getLong("id"), rs.getString("number"), rs.getString("message"));
+
+    private final long id;
+    private final String number;
+    private final String message;
+
+    public Announcement(long id, String number, String message) {
+        this.id = id;
+        this.number = number;
+        this.message = message;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(id);
+        writer.name("number").value(number);
+        writer.name("message").value(message);
+        writer.endObject();
+    }
+}
@@ -0,0 +1,51 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.IOException;
+
+/**
+ * 积分修改记录.
+ */
+public class ChangeCountRecord implements JsonWritable {
+    /**
+     * 查询积分修改记录所需的字段.
+     */
+    public static final String[] columns = {"id", "editor_number", "change_number", "change_value", "description"};
+    /**
+     * 查询结果到积分修改记录的映射.
+     */
+    public static final RowMapper<ChangeCountRecord> rowMapper = (rs, rowNum) ->
+            new ChangeCountRecord(rs.getLong("id"), rs.getString("editor_number"), rs.getString("change_number"),
+                    rs.getInt("change_value"), rs.getString("description"));
+
+    private final long id;
+    private final String editorNumber;
+    private final String changeNumber;
+    private final int changeValue;
+    private final String description;
+
+    public ChangeCountRecord(long id, String editorNumber, String changeNumber, int changeValue, String description) {
+        this.id = id;
+        this.editorNumber = editorNumber;
+        this.changeNumber = changeNumber;
+        this.changeValue = changeValue;
+        this.description = description;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("id").value(id);
+        writer.name("editor_number").value(editorNumber);
+        writer.name("change_number").value(changeNumber);
+        writer.name("change_value").value(changeValue);
+        writer.name("description").value(description);
+        writer.endObject();
+    }
+}
@@ -0,0 +1,31 @@
+package com.tdsata.ourappserver.bean;
+
+/**
+ * 一条积分修改，由客户端上传的Json解析得到.
+ */
+public class CountChange {
+    private String number;// 被修改者的学号
+    private int changeValue;// 改变的值（有符号）
+    private String description;// 修改说明
+
+    public CountChange() {
+    }
+
+    public CountChange(String number, int changeValue, String description) {
+        this.number = number;
+        this.changeValue = changeValue;
+        this.description = description;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public int getChangeValue() {
+        return changeValue;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,33 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 可直接写入JsonWriter的查询结果，无需经过Gson反射.
+ */
+public interface JsonWritable {
+    /**
+     * 将自身以Json对象的形式写入.
+     *
+     * @param writer Json写入器
+     */
+    void writeTo(JsonWriter writer) throws IOException;
+
+    /**
+     * 将列表以Json数组的形式写入.
+     *
+     * @param writer Json写入器
+     * @param list 查询结果列表
+     */
+    static void writeArray(JsonWriter writer, List<? extends JsonWritable> list) throws IOException {
+        writer.beginArray();
+        for (JsonWritable item : list) {
+            item.writeTo(writer);
+        }
+        writer.endArray();
+        writer.flush();
+    }
+}
@@ -0,0 +1,73 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.IOException;
+
+/**
+ * 部门成员列表中的一行.
+ * 对应部门主数据表，头像路径仅保留文件名.
+ */
+public class Member implements JsonWritable {
+    /**
+     * 查询成员列表所需的字段.
+     */
+    public static final String[] columns = {"name", "number", "subject", "phone", "teacher", "qq", "sex", "count", "flag", "photo_path"};
+    /**
+     * 查询结果到成员的映射.
+     */
+    public static final RowMapper<Member> rowMapper = (rs, rowNum) -> {
+        int count = rs.getInt("count");
+        boolean countIsNull = rs.wasNull();
+        String path = String.valueOf(rs.getString("photo_path"));
+        return new Member(rs.getString("name"), rs.getString("number"), rs.getString("subject"),
+                rs.getString("phone"), rs.getString("teacher"), rs.getString("qq"), rs.getString("sex"),
+                countIsNull ? null : count, rs.getString("flag"), path.substring(path.lastIndexOf("/") + 1));
+    };
+
+    private final String name;
+    private final String number;
+    private final String subject;
+    private final String phone;
+    private final String teacher;
+    private final String qq;
+    private final String sex;
+    private final Integer count;
+    private final String flag;
+    private final String photoName;
+
+    public Member(String name, String number, String subject, String phone, String teacher, String qq, String sex,
+                  Integer count, String flag, String photoName) {
+        this.name = name;
+        this.number = number;
+        this.subject = subject;
+        this.phone = phone;
+        this.teacher = teacher;
+        this.qq = qq;
+        this.sex = sex;
+        this.count = count;
+        this.flag = flag;
+        this.photoName = photoName;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(name);
+        writer.name("number").value(number);
+        writer.name("subject").value(subject);
+        writer.name("phone").value(phone);
+        writer.name("teacher").value(teacher);
+        writer.name("qq").value(qq);
+        writer.name("sex").value(sex);
+        writer.name("count").value(count);
+        writer.name("flag").value(flag);
+        writer.name("photoName").value(photoName);
+        writer.endObject();
+    }
+}
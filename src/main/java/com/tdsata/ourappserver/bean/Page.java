@@ -0,0 +1,44 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 按自增id分页的查询结果.
+ *
+ * <p>写出为 {"list": [...], "nextCursor": "..."}，nextCursor为本页最后一行的id，
+ *    客户端以其作为下一页请求的cursor；已无下一页时不写出nextCursor。</p>
+ */
+public class Page<T extends JsonWritable> implements JsonWritable {
+    private final List<T> list;
+    private final String nextCursor;
+
+    public Page(List<T> list, String nextCursor) {
+        this.list = list;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getList() {
+        return list;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("list");
+        writer.beginArray();
+        for (T item : list) {
+            item.writeTo(writer);
+        }
+        writer.endArray();
+        writer.name("nextCursor").value(nextCursor);
+        writer.endObject();
+        writer.flush();
+    }
+}
@@ -0,0 +1,49 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 部门成员列表的增量同步结果.
+ *
+ * <p>写出为 {"version": 版本号, "full": 是否为完整列表, "members": [...], "removed": [...]}；
+ *    full为true时members为完整的成员列表，客户端应替换本地列表；
+ *    否则members为客户端版本之后新增或修改的成员，removed为已移除成员的学号。</p>
+ */
+public class RosterDelta implements JsonWritable {
+    private final long version;
+    private final boolean full;
+    private final List<Member> members;
+    private final Collection<String> removed;
+
+    public RosterDelta(long version, boolean full, List<Member> members, Collection<String> removed) {
+        this.version = version;
+        this.full = full;
+        this.members = members;
+        this.removed = removed;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("version").value(version);
+        writer.name("full").value(full);
+        writer.name("members");
+        writer.beginArray();
+        for (Member member : members) {
+            member.writeTo(writer);
+        }
+        writer.endArray();
+        writer.name("removed");
+        writer.beginArray();
+        for (String number : removed) {
+            writer.value(number);
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+}
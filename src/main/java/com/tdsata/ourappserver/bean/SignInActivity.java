@@ -0,0 +1,44 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.IOException;
+
+/**
+ * 签到活动信息.
+ */
+public class SignInActivity implements JsonWritable {
+    /**
+     * 查询签到活动所需的字段.
+     */
+    public static final String[] columns = {"title", "signInTime", "continueTime"};
+    /**
+     * 查询结果到签到活动的映射.
+     */
+    public static final RowMapper<SignInActivity> rowMapper = (rs, rowNum) -> {
+        String title = rs.getString("title");
+        String signInTime = rs.getString("signInTime");
+        int continueTime = rs.getInt("continueTime");
+        return new SignInActivity(title, signInTime, rs.wasNull() ? null : continueTime);
+    };
+
+    private final String title;
+    private final String signInTime;
+    private final Integer continueTime;
+
+    public SignInActivity(String title, String signInTime, Integer continueTime) {
+        this.title = title;
+        this.signInTime = signInTime;
+        this.continueTime = continueTime;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("title").value(title);
+        writer.name("signInTime").value(signInTime);
+        writer.name("continueTime").value(continueTime);
+        writer.endObject();
+    }
+}
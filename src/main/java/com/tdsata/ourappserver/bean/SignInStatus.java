@@ -0,0 +1,36 @@
+package com.tdsata.ourappserver.bean;
+
+import com.google.gson.stream.JsonWriter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.IOException;
+
+/**
+ * 部员在某一签到活动中的签到状态.
+ */
+public class SignInStatus implements JsonWritable {
+    /**
+     * 查询结果到签到状态的映射.
+     */
+    public static final RowMapper<SignInStatus> rowMapper = (rs, rowNum) ->
+            new SignInStatus(rs.getString("number"), rs.getString("name"), rs.getInt("signInStatus"));
+
+    private final String number;
+    private final String name;
+    private final int signInStatus;// 0：未签到；1：已签到；2：已签到但迟到
+
+    public SignInStatus(String number, String name, int signInStatus) {
+        this.number = number;
+        this.name = name;
+        this.signInStatus = signInStatus;
+    }
+
+    @Override
+    public void writeTo(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("number").value(number);
+        writer.name("name").value(name);
+        writer.name("signInStatus").value(signInStatus);
+        writer.endObject();
+    }
+}
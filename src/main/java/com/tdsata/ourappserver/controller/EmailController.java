@@ -1,6 +1,8 @@
 package com.tdsata.ourappserver.controller;
 
 import com.google.gson.Gson;
+import com.tdsata.ourappserver.DatabaseInitializer;
+import com.tdsata.ourappserver.util.AdminSessionCache;
 import com.tdsata.ourappserver.util.SQLTools;
 import com.tdsata.ourappserver.util.Server;
 import com.tdsata.ourappserver.util.Tools;
@@ -8,6 +10,7 @@ import freemarker.template.Configuration;
 import freemarker.template.Template;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
@@ -26,6 +29,7 @@ import java.util.Map;
 import java.util.Random;
 
 @RestController("Email")
+@DependsOn(DatabaseInitializer.beanName)
 public class EmailController {
     private final Tools.MyLog myLog = new Tools.MyLog(EmailController.class);
     private final JavaMailSender javaMailSender;
@@ -55,15 +59,15 @@ public class EmailController {
      * @param useEmail 接收邮件的Email地址
      */
     @PostMapping(value = "getMailCode")
-    public String getMailCode(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String useEmail) {
+    public String getMailCode(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String useEmail) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 useEmail = server.aesDecryptData(useEmail);
                 SQLTools sqlTools = new SQLTools(jdbcTemplate);
-                List<Map<String, Object>> list = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                List<Map<String, Object>> list = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         "mail", "mail_enable");
                 if (list == null) {
                     return "ACCOUNT_NO_EXIST";
@@ -81,8 +85,9 @@ public class EmailController {
                 }
                 // 生成与保存邮件验证码
                 String mailCode = String.valueOf(100000 + random.nextInt(900000));
-                sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         "temp", mailCode);
+                AdminSessionCache.invalidate(department, account);
                 // 10分钟后使失效
                 server.invalidMail(sqlTools, department, account);
                 // 发送邮件
@@ -112,14 +117,14 @@ public class EmailController {
      * 发送验证电子邮件的邮件.
      */
     @PostMapping("sendVerifyEmailMail")
-    public String sendVerifyEmailMail(String aesKeyStr, String verifyCiphertext, String departmentJson, String account) {
+    public String sendVerifyEmailMail(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 SQLTools sqlTools = new SQLTools(jdbcTemplate);
-                List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         "mail", "mail_enable", "mail_verify_time");
                 if (query != null) {
                     Map<String, Object> user = query.get(0);
@@ -135,7 +140,7 @@ public class EmailController {
                         mimeMessageHelper.setSubject(mailSubject);
                         ModelMap modelMap = new ModelMap();
                         String link = "https://mzkt.xyz:6226/verifyEmail?number=" + account + "&v1="
-                                + Tools.getKeccak512Password(department.name(), "") + "&v2="
+                                + department.getVerifyToken() + "&v2="
                                 + Tools.getKeccak512Password(email, "");
                         modelMap.put("link", link);
                         modelMap.put("linkText", link.substring(0, 30) + "...");
@@ -145,7 +150,7 @@ public class EmailController {
                         String type = "image/png";
                         mimeMessageHelper.addInline("ourapp", getStaticResource("static/mail_icon_ourapp.png", type));
                         javaMailSender.send(mimeMessage);
-                        sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                        sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                                 "mail_verify_time", String.valueOf(System.currentTimeMillis()));
                         return "OK";
                     }
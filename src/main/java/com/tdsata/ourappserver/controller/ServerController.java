@@ -1,40 +1,80 @@
 package com.tdsata.ourappserver.controller;
 
 import com.google.gson.Gson;
+import com.tdsata.ourappserver.DatabaseInitializer;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+import com.tdsata.ourappserver.bean.Announcement;
+import com.tdsata.ourappserver.bean.ChangeCountRecord;
+import com.tdsata.ourappserver.bean.CountChange;
+import com.tdsata.ourappserver.bean.Page;
+import com.tdsata.ourappserver.bean.RosterDelta;
+import com.tdsata.ourappserver.bean.SignInActivity;
+import com.tdsata.ourappserver.bean.SignInStatus;
+import com.tdsata.ourappserver.util.AdminSessionCache;
+import com.tdsata.ourappserver.util.AuthExecutor;
+import com.tdsata.ourappserver.util.CountService;
+import com.tdsata.ourappserver.util.HeadPhotoCache;
+import com.tdsata.ourappserver.util.ReadReplica;
+import com.tdsata.ourappserver.util.RosterCache;
 import com.tdsata.ourappserver.util.SQLTools;
 import com.tdsata.ourappserver.util.Server;
+import com.tdsata.ourappserver.util.SignInActivityCache;
 import com.tdsata.ourappserver.util.Tools;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.imageio.ImageIO;
 import javax.imageio.stream.ImageOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static com.tdsata.ourappserver.util.SQLTools.tempKey;
 
 @RestController("Server")
+@DependsOn(DatabaseInitializer.beanName)
 public class ServerController {
     private final Tools.MyLog myLog = new Tools.MyLog(ServerController.class);
     private final SQLTools sqlTools;
+    private final SQLTools readTools;// 查询优先走只读从库，仅用于只读接口
     private final Gson gson;
     private final SimpleDateFormat dateFormat;
+    private final AuthExecutor authExecutor;// 执行登录等CPU开销大的身份验证请求
+    private final SignInActivityCache signInActivityCache;
+    private final CountService countService;
+    private final RosterCache rosterCache;// 各部门成员列表，成员数据修改后需调用invalidate
+    private final HeadPhotoCache headPhotoCache;// 头像文件修改后需调用invalidate
+    private static final int defaultPageSize = 20;// 分页查询的默认每页行数
+    private static final int maxPageSize = 100;// 分页查询的每页行数上限
+    private static final int maxCountChanges = 1000;// 批量修改积分的条目数上限
+    private static final long headPhotoCacheBytes = 32 * 1024 * 1024;// 头像缓存占用的最大字节数
 
     @Autowired
-    public ServerController(JdbcTemplate jdbcTemplate) {
+    public ServerController(JdbcTemplate jdbcTemplate, ObjectProvider<ReadReplica> readReplica,
+                            @Value("${ourapp.auth.threads:${spring.datasource.hikari.maximum-pool-size:10}}") int authThreads) {
         sqlTools = new SQLTools(jdbcTemplate);
+        ReadReplica replica = readReplica.getIfAvailable();
+        readTools = new SQLTools(jdbcTemplate, replica == null ? null : replica.getJdbcTemplate());
         gson = new Gson();
         dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.CHINA);
+        authExecutor = new AuthExecutor("auth", authThreads, 256, 2);
+        signInActivityCache = new SignInActivityCache(sqlTools);
+        countService = new CountService(sqlTools);
+        rosterCache = new RosterCache(sqlTools, gson, 512);
+        headPhotoCache = new HeadPhotoCache(headPhotoCacheBytes);
     }
 
     //*************************初始化连接与实时更新客户端RSA公钥****************************
@@ -56,42 +96,79 @@ public class ServerController {
         return deferredResult;
     }
 
+    /**
+     * 建立服务器推送连接（Server-Sent Events），RSA公钥更新时推送"rsaPublicKey"事件.
+     * 连接建立时立即推送当前RSA公钥；旧版客户端仍可使用updateRSAPublicKey长轮询.
+     */
+    @GetMapping(value = "subscribeServerPush", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeServerPush() {
+        SseEmitter emitter = new SseEmitter(3600000L/*1小时超时，客户端超时后重连*/);
+        Server.addPushEmitter(emitter);
+        return emitter;
+    }
+
     //**************************************敏感数据传输********************************************
     // 流程（设计依据：AES加解密效率高于RSA加解密效率，利于较大数据的传输）：
     // 上传：AES密钥密文（使用RSA公钥加密）、校验AES密钥的校验密文（客户端使用AES密钥加密"TD-SATA"文本生成的密文）、
     //      敏感数据密文（客户端使用AES加密敏感数据生成的密文）
     // 使用：使用RSA私钥解密出AES密钥 --> 校验AES密钥 --> 解密敏感数据
+    // 协议v2：客户端先调用v2/handshake获得会话id，此后的请求以sessionId代替aesKeyStr与verifyCiphertext；
+    //        会话失效时请求返回"AES_KEY_ERROR"，客户端需重新握手
+    /**
+     * 协议v2握手，校验AES密钥后创建与之绑定的会话.
+     *
+     * @return 使用AES密钥加密的会话id
+     */
+    @PostMapping("v2/handshake")
+    public String handshake(String aesKeyStr, String verifyCiphertext) {
+        try {
+            Server server = new Server(aesKeyStr);
+            if (Tools.verifyAESKey(server, verifyCiphertext)) {
+                return server.aesEncryptData(server.openSession());
+            } else {
+                return "AES_KEY_ERROR";
+            }
+        } catch (Exception e) {
+            myLog.e("握手发生异常", e);
+            return "ERROR";
+        }
+    }
+
     /**
      * 使用账号和密码进行登录.
      *
      * @param aesKeyStr 使用RSA公钥加密的含AES密钥字符串（下同）
      * @param verifyCiphertext 客户端使用AES密钥加密“TD-SATA”后生成的加密结果（下同）
+     * @param sessionId 协议v2握手获得的会话id，提供时可省略aesKeyStr与verifyCiphertext（下同）
      * @param departmentJson 处于加密状态（使用AES密钥加密）的部门的Json字段（下同）
      * @param account 处于加密状态（使用AES密钥加密）的账号（下同）
      * @param password 处于加密状态（使用AES密钥加密）的密码（客户端使用Keccak512加密原密码后生成的密码）
      */
     @PostMapping(value = "login")
-    public String login(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String password) {
+    public CompletableFuture<Object> login(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String password) {
+        return authExecutor.submit(() -> loginTask(aesKeyStr, verifyCiphertext, sessionId, departmentJson, account, password));
+    }
+
+    private Object loginTask(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String password) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 password = server.aesDecryptData(password);
                 List<Map<String, Object>> list = sqlTools.queryDBTable(department.getTableName(),
-                        "number = '" + account + "'", "password", "salt", "flag");
+                        SQLTools.where("number = ?", account), "password", "salt", "flag");
                 if (list != null) {
                     Map<String, Object> user = list.get(0);
-                    if (String.valueOf(user.get("password")).equals(Tools.getKeccak512Password(password, String.valueOf(user.get("salt"))))) {
-                        list = sqlTools.queryDBTable(department.getTableName(), null,
-                                "name", "number", "subject", "phone", "teacher", "qq", "sex", "count", "flag", "photo_path");
-                        if (list != null) {
+                    if (Tools.verifyKeccak512Password(String.valueOf(user.get("password")), password, String.valueOf(user.get("salt")))) {
+                        RosterCache.Snapshot roster = rosterCache.get(department);
+                        if (roster.getJson() != null) {
                             String userFlag = String.valueOf(user.get("flag"));
                             if (userFlag.contains("2"/*副部长*/) || userFlag.contains("3"/*部长*/)) {// 登录账户为副部长或部长
-                                sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'", tempKey, server.getAESKeyNoEncrypt());
+                                sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account), tempKey, server.getAESKeyNoEncrypt());
+                                AdminSessionCache.put(department, account, server.getAESKeyNoEncrypt());
                             }
-                            replacePhotoName(list);
-                            return server.aesEncryptData(gson.toJson(list));
+                            return server.aesEncryptBytes(roster.getJson());
                         } else {// ignore
                             return "ERROR";
                         }
@@ -112,18 +189,30 @@ public class ServerController {
 
     /**
      * 刷新客户端成员数据列表.
+     * 若携带rosterVersion则进行增量同步：版本未变化时返回NOT_MODIFIED，
+     * 否则返回加密的 {"version": 版本号, "full": 是否为完整列表, "members": [...], "removed": [...]}；
+     * 未携带时返回完整的成员列表.
+     *
+     * @param rosterVersion 处于加密状态（使用AES密钥加密）的客户端上次同步得到的版本号，首次同步时为空字符串
      */
     @PostMapping(value = "refreshMembers")
-    public String refreshMembers(String aesKeyStr, String verifyCiphertext, String departmentJson) {
+    public Object refreshMembers(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String rosterVersion) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
-                List<Map<String, Object>> queryList = sqlTools.queryDBTable(department.getTableName(), null,
-                        "name", "number", "subject", "phone", "teacher", "qq", "sex", "count", "flag", "photo_path");
-                if (queryList != null) {
-                    replacePhotoName(queryList);
-                    return server.aesEncryptData(gson.toJson(queryList));
+                if (rosterVersion != null) {
+                    rosterVersion = server.aesDecryptData(rosterVersion);
+                    long clientVersion = "".equals(rosterVersion) ? -1 : Long.parseLong(rosterVersion);
+                    if (clientVersion == rosterCache.getVersion(department)) {
+                        return "NOT_MODIFIED";
+                    }
+                    RosterDelta delta = rosterCache.delta(rosterCache.get(department), department, clientVersion);
+                    return server.aesEncryptResponse(writer -> delta.writeTo(gson.newJsonWriter(writer)));
+                }
+                RosterCache.Snapshot roster = rosterCache.get(department);
+                if (roster.getJson() != null) {
+                    return server.aesEncryptBytes(roster.getJson());
                 }
             } else {
                 return "AES_KEY_ERROR";
@@ -134,35 +223,28 @@ public class ServerController {
         return "ERROR";
     }
 
-    private void replacePhotoName(List<Map<String, Object>> list) {
-        for (Map<String, Object> map : list) {
-            String path = String.valueOf(map.get("photo_path"));
-            map.put("photoName", path.substring(path.lastIndexOf("/") + 1));
-            map.remove("photo_path");
-        }
-    }
-
     /**
      * 请求验证填写的邮件验证码是否正确.
      *
      * @param inputMailCode 处于加密状态（使用AES密钥加密）的用户输入的邮件验证码
      */
     @PostMapping(value = "verifyMailCode")
-    public String verifyMailCode(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String inputMailCode) {
+    public String verifyMailCode(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String inputMailCode) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 inputMailCode = server.aesDecryptData(inputMailCode);
-                Map<String, Object> map = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                Map<String, Object> map = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         tempKey).get(0);
                 String mailCode = String.valueOf(map.get(tempKey));
                 server.stopMailCodeTimer();
                 boolean isRight = mailCode.equals(inputMailCode);
                 if (isRight) {
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                    sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                             tempKey, "true");
+                    AdminSessionCache.invalidate(department, account);
                 }
                 return String.valueOf(isRight);
             } else {
@@ -180,21 +262,26 @@ public class ServerController {
      * @param newPassword 处于加密状态（使用AES密钥加密）的新密码（客户端使用Keccak512加密原新密码后生成的密码）
      */
     @PostMapping(value = "alterPasswordUseMail")
-    public String alterPasswordUseMail(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String newPassword) {
+    public CompletableFuture<Object> alterPasswordUseMail(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String newPassword) {
+        return authExecutor.submit(() -> alterPasswordUseMailTask(aesKeyStr, verifyCiphertext, sessionId, departmentJson, account, newPassword));
+    }
+
+    private String alterPasswordUseMailTask(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String newPassword) {
         Tools.DepartmentEnum department = null;
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 newPassword = server.aesDecryptData(newPassword);
-                Map<String, Object> map = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                Map<String, Object> map = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         tempKey).get(0);
                 if (Boolean.parseBoolean(String.valueOf(map.get("temp")))) {
                     String salt = Tools.getRandomSalt();
                     newPassword = Tools.getKeccak512Password(newPassword, salt);
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                    sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                             "password", newPassword, "salt", salt, tempKey, "");
+                    AdminSessionCache.invalidate(department, account);
                     return "OK";
                 } else {
                     return "ILLEGAL";
@@ -206,7 +293,8 @@ public class ServerController {
             myLog.e("修改密码发生异常", e);
             if (department != null) {
                 try {
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'", tempKey, "true");
+                    sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account), tempKey, "true");
+                    AdminSessionCache.invalidate(department, account);
                 } catch (Exception exception) {
                     // ignore
                 }
@@ -224,10 +312,10 @@ public class ServerController {
      * @param continueTime 有效时间，整型数据（单位：分钟）
      */
     @PostMapping("addSignInActivity")
-    public String addSignInActivity(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public String addSignInActivity(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                                      String activityTitle, String signInTime, String continueTime) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
@@ -241,14 +329,15 @@ public class ServerController {
                     if (Integer.parseInt(continueTime)/*校验整型数据*/ < 0) {
                         return "ADD_FAIL";
                     }
-                    if (sqlTools.queryDBTable(SQLTools.signInActivityInfo, "title = '" + activityTitle + "'", "*") != null) {
+                    if (signInActivityCache.exists(activityTitle)) {
                         return "ACTIVITY_ALREADY_EXIST";
                     }
                     sqlTools.insertDataInDBTable(SQLTools.signInActivityInfo,
-                            "title", activityTitle, "signInTime", signInTime, "continueTime", continueTime);
-                    String id = String.valueOf(sqlTools.queryDBTable(SQLTools.signInActivityInfo,
-                            "title = '" + activityTitle + "'", "id").get(0).get("id"));
-                    sqlTools.addFieldOnTable(department.getSignInTableName(), "`" + id + "` int", "not null", "0", null, null);
+                            "title", activityTitle, "signInTime", signInTime, "continueTime", continueTime,
+                            "department", department.name());
+                    signInActivityCache.invalidate(department);
+                    signInActivityCache.invalidateIds(List.of(activityTitle));
+                    signInActivityCache.getId(department, activityTitle);// 预先缓存新活动的id，签到开始后的查询不再访问数据库
                     return "ADD_SUCCESS";
                 }
             } else {
@@ -269,29 +358,40 @@ public class ServerController {
      *         true表示对应活动删除成功，false则表示对应活动删除失败
      */
     @PostMapping("delSignInActivities")
-    public String delSignInActivities(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String activityTitlesJson) {
+    public String delSignInActivities(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String activityTitlesJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     activityTitlesJson = server.aesDecryptData(activityTitlesJson);
                     String[] titles = gson.fromJson(activityTitlesJson, String[].class);
                     boolean[] results = new boolean[titles.length];
-                    for (int i = 0; i < titles.length; i++) {
-                        try {
-                            List<Map<String, Object>> query = sqlTools.queryDBTable(SQLTools.signInActivityInfo, "title = '" + titles[i] + "'", "id");
-                            if (query == null) {// 活动不存在或已删除
-                                results[i] = false;
-                                continue;
-                            }
-                            String id = String.valueOf(query.get(0).get("id"));
-                            sqlTools.delDataFromDBTable(SQLTools.signInActivityInfo, "title = '" + titles[i] + "'");
-                            sqlTools.delFieldOnTable(department.getSignInTableName(), "`" + id + "`");
-                            results[i] = true;
-                        } catch (Exception e) {
-                            results[i] = false;
+                    if (titles.length == 0) {
+                        return gson.toJson(results);
+                    }
+                    // 一次查询所有活动的id，再在同一事务中删除活动信息及其签到记录
+                    List<Map<String, Object>> query = sqlTools.queryDBTable(SQLTools.signInActivityInfo,
+                            SQLTools.whereIn("title", Arrays.asList(titles)).and("department = ?", department.name()), "id", "title");
+                    if (query == null) {// 活动均不存在或已删除
+                        return gson.toJson(results);
+                    }
+                    Map<String, Integer> titleToId = new HashMap<>();
+                    for (Map<String, Object> map : query) {
+                        titleToId.put(String.valueOf(map.get("title")), Integer.parseInt(String.valueOf(map.get("id"))));
+                    }
+                    try {
+                        sqlTools.beginUnitOfWork()
+                                .delete(department.getSignInRecordTableName(), SQLTools.whereIn("activity_id", titleToId.values()))
+                                .delete(SQLTools.signInActivityInfo, SQLTools.whereIn("id", titleToId.values()))
+                                .commit();
+                        signInActivityCache.invalidate(department);
+                        signInActivityCache.invalidateIds(titleToId.keySet());
+                        for (int i = 0; i < titles.length; i++) {
+                            results[i] = titleToId.containsKey(titles[i]);
                         }
+                    } catch (Exception e) {
+                        myLog.e("批量删除签到活动失败", e);
                     }
                     return gson.toJson(results);
                 }
@@ -313,10 +413,10 @@ public class ServerController {
      * @param multipleSignInStatusJson 多个签到部员的签到状态，需与学号一一对应
      */
     @PostMapping("setMultipleSignInStatus")
-    public String setMultipleSignInStatus(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public String setMultipleSignInStatus(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                                           String activityTitle, String multipleSignInNumberJson, String multipleSignInStatusJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
@@ -338,12 +438,10 @@ public class ServerController {
                                     return "ERROR";
                             }
                         }
-                        List<Map<String, Object>> queryId = sqlTools.queryDBTable(SQLTools.signInActivityInfo,
-                                "title = '" + activityTitle + "'", "id");
-                        if (queryId == null) {
+                        Integer id = signInActivityCache.getId(department, activityTitle);
+                        if (id == null) {
                             return "ACTIVITY_NOT_EXIST";
                         }
-                        String id = String.valueOf(queryId.get(0).get("id"));
                         setStatus(department, id, statusOne, "1");
                         setStatus(department, id, statusTwo, "2");
                         return "OK";
@@ -358,20 +456,17 @@ public class ServerController {
         return "ERROR";
     }
 
-    private void setStatus(Tools.DepartmentEnum department, String activityId, List<String> numbers, String status) throws Exception {
-        int id = Integer.parseInt(activityId);// 校验获取的活动id是否异常
+    private void setStatus(Tools.DepartmentEnum department, int id, List<String> numbers, String status) throws Exception {
         int size = numbers.size();
         if (size > 0) {
-            StringBuilder inCondition = new StringBuilder("`number` in (");
-            for (int i = 0; i < size; i++) {
-                inCondition.append("'").append(numbers.get(i)).append("'");
-                if (i < size - 1) {
-                    inCondition.append(", ");
-                }
-            }
-            inCondition.append(") and `").append(id).append("` = '0'");
-            sqlTools.updateDataForDBTable(department.getSignInTableName(), String.valueOf(inCondition),
-                    "`" + id + "`", status);
+            // 仅为部门中存在的成员添加记录，已有的签到状态不被覆盖
+            SQLTools.Condition condition = SQLTools.whereIn("number", numbers);
+            Object[] args = new Object[size + 2];
+            args[0] = id;
+            args[1] = Integer.parseInt(status);
+            System.arraycopy(condition.getArgs(), 0, args, 2, size);
+            sqlTools.executeUpdate("insert ignore into " + department.getSignInRecordTableName() + " (activity_id, number, status) "
+                    + "select ?, number, ? from " + department.getTableName() + " where " + condition.getClause(), args);
         }
     }
 
@@ -381,28 +476,23 @@ public class ServerController {
      * @param activityTitle 指定的签到活动标题
      */
     @PostMapping("getSignInStatusList")
-    public String getSignInStatusList(String aesKeyStr, String verifyCiphertext, String departmentJson, String activityTitle) {
+    public Object getSignInStatusList(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String activityTitle) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 activityTitle = server.aesDecryptData(activityTitle);
-                List<Map<String, Object>> queryId = sqlTools.queryDBTable(SQLTools.signInActivityInfo,
-                        "title = '" + activityTitle + "'", "id");
-                if (queryId == null) {
+                Integer id = signInActivityCache.getId(department, activityTitle);
+                if (id == null) {
                     return "ACTIVITY_NOT_EXIST";
                 }
-                String id = String.valueOf(queryId.get(0).get("id"));
-                String idKey = String.valueOf(Integer.parseInt(id));// 校验获取的id
-                List<Map<String, Object>> queryList = sqlTools.queryDBTable(department.getSignInTableName(),
-                        "number not in (select number from software where locate('3', flag) > 0 or locate('2', flag) > 0)",
-                        "`number`", "`name`", "`" + idKey + "`");
-                if (queryList != null) {
-                    for (Map<String, Object> map : queryList){
-                        map.put("signInStatus", map.get(idKey));
-                        map.remove(idKey);
-                    }
-                    return server.aesEncryptData(gson.toJson(queryList));
+                // 部长、副部长不参与签到
+                List<SignInStatus> statusList = readTools.querySQL("select m.number, m.name, coalesce(r.status, 0) as signInStatus from "
+                        + department.getTableName() + " m left join " + department.getSignInRecordTableName()
+                        + " r on r.activity_id = ? and r.number = m.number where locate('3', m.flag) = 0 and locate('2', m.flag) = 0",
+                        SignInStatus.rowMapper, id);
+                if (statusList != null) {
+                    return server.aesEncryptList(gson, statusList);
                 }
             } else {
                 return "AES_KEY_ERROR";
@@ -419,24 +509,24 @@ public class ServerController {
      * @param activityTitle 活动标题
      */
     @PostMapping("getSignInStatus")
-    public String getSignInStatus(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String activityTitle) {
+    public String getSignInStatus(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String activityTitle) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 activityTitle = server.aesDecryptData(activityTitle);
-                List<Map<String, Object>> queryId = sqlTools.queryDBTable(SQLTools.signInActivityInfo,
-                        "title = '" + activityTitle + "'", "id");
-                if (queryId == null) {
+                Integer id = signInActivityCache.getId(department, activityTitle);
+                if (id == null) {
                     return "ACTIVITY_NOT_EXIST";
                 }
-                String idStr = String.valueOf(queryId.get(0).get("id"));
-                int id = Integer.parseInt(idStr);
-                List<Map<String, Object>> queryStatus = sqlTools.queryDBTable(department.getSignInTableName(),
-                        "number = '" + account + "'", "`" + id + "`");
+                List<Map<String, Object>> queryStatus = sqlTools.queryDBTable(department.getSignInRecordTableName(),
+                        SQLTools.where("activity_id = ? and number = ?", id, account), "status");
                 if (queryStatus != null) {
-                    return String.valueOf(queryStatus.get(0).get(String.valueOf(id)));
+                    return String.valueOf(queryStatus.get(0).get("status"));
+                }
+                if (sqlTools.exists(department.getTableName(), SQLTools.where("number = ?", account))) {
+                    return "0";// 无签到记录即未签到
                 }
             } else {
                 return "AES_KEY_ERROR";
@@ -451,29 +541,16 @@ public class ServerController {
      * 获取活动列表.
      */
     @PostMapping("getSignInActivities")
-    public String getSignInActivities(String aesKeyStr, String verifyCiphertext, String departmentJson) {
+    public Object getSignInActivities(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
-                String[] activityIds = sqlTools.queryFieldName(department.getSignInTableNameWithoutSymbol(),
-                        "number", "name", "id");
-                if (activityIds == null) {
+                List<SignInActivity> activities = signInActivityCache.get(department);
+                if (activities.isEmpty()) {
                     return "HAS_NOT_ACTIVITY";
                 }
-                StringBuffer condition = new StringBuffer();
-                for (int i = 0; i < activityIds.length; i++) {
-                    condition.append("id = '").append(activityIds[i]).append("'");
-                    if (i < activityIds.length - 1) {
-                        condition.append(" or ");
-                    }
-                }
-                List<Map<String, Object>> queryResult = sqlTools.queryDBTable(SQLTools.signInActivityInfo, String.valueOf(condition),
-                        "title", "signInTime", "continueTime");
-                if (queryResult == null) {
-                    return "HAS_NOT_ACTIVITY";
-                }
-                return server.aesEncryptData(gson.toJson(queryResult));
+                return server.aesEncryptList(gson, activities);
             } else {
                 return "AES_KEY_ERROR";
             }
@@ -490,19 +567,23 @@ public class ServerController {
      * @param newPassword 新密码的Keccak512密文
      */
     @PostMapping("alterPassword")
-    public String alterPassword(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String oldPassword, String newPassword) {
+    public CompletableFuture<Object> alterPassword(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String oldPassword, String newPassword) {
+        return authExecutor.submit(() -> alterPasswordTask(aesKeyStr, verifyCiphertext, sessionId, departmentJson, account, oldPassword, newPassword));
+    }
+
+    private String alterPasswordTask(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String oldPassword, String newPassword) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
                 oldPassword = server.aesDecryptData(oldPassword);
-                Map<String, Object> user = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                Map<String, Object> user = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         "password", "salt").get(0);
-                if (String.valueOf(user.get("password")).equals(Tools.getKeccak512Password(oldPassword, String.valueOf(user.get("salt"))))) {
+                if (Tools.verifyKeccak512Password(String.valueOf(user.get("password")), oldPassword, String.valueOf(user.get("salt")))) {
                     newPassword = server.aesDecryptData(newPassword);
                     String newSalt = Tools.getRandomSalt();
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                    sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                             "salt", newSalt, "password", Tools.getKeccak512Password(newPassword, newSalt));
                     return "OK";
                 } else {
@@ -523,9 +604,9 @@ public class ServerController {
      * @param photoText 图片转化的Base64编码
      */
     @PostMapping("uploadHeadPhoto")
-    public String uploadHeadPhoto(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String photoText) {
+    public String uploadHeadPhoto(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String photoText) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
@@ -537,7 +618,7 @@ public class ServerController {
                 String directory = "C:/Users/Administrator/MyFile/SpringBoot/OURAPPServer/HeadPhoto/" + department.name().toLowerCase();
                 File dir = new File(directory);
                 if (dir.exists() || dir.mkdirs()) {
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                             "photo_path");
                     if (query != null) {
                         Map<String, Object> user = query.get(0);
@@ -547,14 +628,16 @@ public class ServerController {
                             if (pic.exists() && pic.delete()) {
                                 myLog.d("文件：" + pic.getAbsolutePath() + "已删除");
                             }
+                            headPhotoCache.invalidate(path);
                         }
                         String filename = Tools.getMD5(account).substring(0, 8) + Tools.getMD5(String.valueOf(System.currentTimeMillis())).substring(0, 8);
                         File photo = new File(directory, filename);
                         try (ImageOutputStream ios = ImageIO.createImageOutputStream(photo)) {
                             ios.write(picData);
                         }
-                        sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                        sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                                 "photo_path", photo.getAbsolutePath().replace("\\", "/"));
+                        rosterCache.invalidate(department, account);
                         return server.aesEncryptData(filename);
                     }
                 }
@@ -573,51 +656,30 @@ public class ServerController {
      * @param numbersJson 由多个学号组成的字符串数组的Json格式
      */
     @PostMapping("getHeadPhotos")
-    public String getHeadPhotos(String aesKeyStr, String verifyCiphertext, String departmentJson, String numbersJson) {
+    public Object getHeadPhotos(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String numbersJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 String[] numbers = gson.fromJson(server.aesDecryptData(numbersJson), String[].class);
                 if (numbers.length > 0) {
-                    StringBuilder condition = new StringBuilder("number in (");
-                    for (int i = 0; i < numbers.length; i++) {
-                        condition.append("'").append(numbers[i]).append("'");
-                        if (i < numbers.length - 1) {
-                            condition.append(", ");
-                        }
-                    }
-                    condition.append(")");
-                    List<Map<String, Object>> queryList = sqlTools.queryDBTable(department.getTableName(), condition.toString(), "number", "photo_path");
+                    List<Map<String, Object>> queryList = readTools.queryDBTable(department.getTableName(),
+                            SQLTools.whereIn("number", Arrays.asList(numbers)), "number", "photo_path");
                     if (queryList != null) {
-                        Map<String, String> result = new HashMap<>();
-                        for (Map<String, Object> map : queryList) {
-                            String key = String.valueOf(map.get("number"));
-                            if (key.equals("null")) {
-                                continue;
-                            }
-                            String path = String.valueOf(map.get("photo_path"));
-                            if (path.equals("null") || path.equals("default_photo")) {
-                                result.put(key, "default_photo");
-                            } else {
-                                try {
-                                    File pic = new File(path);
-                                    try (FileInputStream fis = new FileInputStream(pic)) {
-                                        long bytes = pic.length();
-                                        byte[] picData = new byte[bytes <= Integer.MAX_VALUE ? (int) bytes : 0];
-                                        if (picData.length != 0 && fis.read(picData) > 0) {
-                                            String photoText = new String(Base64.getEncoder().encode(picData), StandardCharsets.UTF_8);
-                                            result.put(key, photoText);
-                                        } else {
-                                            result.put(key, "default_photo");
-                                        }
-                                    }
-                                } catch (IOException e) {
-                                    result.put(key, "default_photo");
+                        // 逐个读取头像并直接写入加密输出流，同一时刻仅持有一张头像的数据
+                        return server.aesEncryptResponse(writer -> {
+                            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+                            jsonWriter.beginObject();
+                            for (Map<String, Object> map : queryList) {
+                                String key = String.valueOf(map.get("number"));
+                                if (key.equals("null")) {
+                                    continue;
                                 }
+                                jsonWriter.name(key).value(headPhotoCache.get(String.valueOf(map.get("photo_path"))));
                             }
-                        }
-                        return server.aesEncryptData(gson.toJson(result));
+                            jsonWriter.endObject();
+                            jsonWriter.flush();
+                        });
                     }
                 }
             } else {
@@ -636,16 +698,16 @@ public class ServerController {
      * @param message 公告内容
      */
     @PostMapping("addAnnouncement")
-    public String addAnnouncement(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String message) {
+    public String addAnnouncement(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String message) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     account = server.aesDecryptData(account);
                     message = server.aesDecryptData(message);
                     List<Map<String, Object>> query = sqlTools.queryDBTable(department.getAnnouncementTableName(),
-                            "message = '" + message + "'", "*");
+                            SQLTools.where("message = ?", message), "*");
                     if (query != null) {
                         return "ANNOUNCEMENT_ALREADY_EXISTS";
                     }
@@ -669,19 +731,19 @@ public class ServerController {
      * @param id 公告id
      */
     @PostMapping("delAnnouncement")
-    public String delAnnouncement(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String id) {
+    public String delAnnouncement(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String id) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     id = server.aesDecryptData(id);
                     List<Map<String, Object>> query = sqlTools.queryDBTable(department.getAnnouncementTableName(),
-                            "id = '" + id + "'", "*");
+                            SQLTools.where("id = ?", id), "*");
                     if (query == null) {
                         return "ANNOUNCEMENT_NOT_EXISTS";
                     }
-                    sqlTools.delDataFromDBTable(department.getAnnouncementTableName(), "id = '" + id + "'");
+                    sqlTools.delDataFromDBTable(department.getAnnouncementTableName(), SQLTools.where("id = ?", id));
                     return "OK";
                 }
             } else {
@@ -695,17 +757,30 @@ public class ServerController {
 
     /**
      * 获取公告列表.
+     * 若携带cursor或pageSize则按id从新到旧分页返回 {"list": [...], "nextCursor": "..."}，否则返回全部公告.
+     *
+     * @param cursor 处于加密状态（使用AES密钥加密）的上一页返回的nextCursor，请求第一页时为空
+     * @param pageSize 处于加密状态（使用AES密钥加密）的每页行数，为空则使用默认值
      */
     @PostMapping("getAnnouncementList")
-    public String getAnnouncementList(String aesKeyStr, String verifyCiphertext, String departmentJson) {
+    public Object getAnnouncementList(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson,
+                                      String cursor, String pageSize) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
-                List<Map<String, Object>> query = sqlTools.queryDBTable(department.getAnnouncementTableName(), null,
-                        "id", "number", "message");
-                if (query != null) {
-                    return server.aesEncryptData(gson.toJson(query));
+                if (cursor != null || pageSize != null) {
+                    Page<Announcement> page = readTools.queryPage(department.getAnnouncementTableName(), null,
+                            decryptCursor(server, cursor), decryptPageSize(server, pageSize),
+                            Announcement.rowMapper, Announcement::getId, Announcement.columns);
+                    if (page.getList().isEmpty() && cursor == null) {
+                        return "NO_ANNOUNCEMENT";
+                    }
+                    return server.aesEncryptResponse(writer -> page.writeTo(gson.newJsonWriter(writer)));
+                }
+                if (readTools.exists(department.getAnnouncementTableName(), null)) {
+                    return server.aesEncryptResponse(writer -> readTools.streamToJson(gson.newJsonWriter(writer),
+                            department.getAnnouncementTableName(), null, Announcement.rowMapper, Announcement.columns));
                 } else {
                     return "NO_ANNOUNCEMENT";
                 }
@@ -726,10 +801,10 @@ public class ServerController {
      * @param changeValue 改变的值（实为有符号整型数据）
      */
     @PostMapping("changeCount")
-    public String changeCount(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public String changeCount(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                               String toNumber, String changeValue, String description) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
@@ -737,19 +812,8 @@ public class ServerController {
                     toNumber = server.aesDecryptData(toNumber);
                     int change = Integer.parseInt(server.aesDecryptData(changeValue));
                     description = server.aesDecryptData(description);
-                    if ("".equals(description)) {
-                        description = "no-description";
-                    }
-                    sqlTools.insertDataInDBTable(department.getChangeCountTableName(),
-                            "editor_number", account, "change_number", toNumber,
-                            "change_value", String.valueOf(change), "description", description);
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(),
-                            "number = '" + toNumber + "'", "count");
-                    if (query != null) {
-                        int count = Integer.parseInt(String.valueOf(query.get(0).get("count")));
-                        count += change;
-                        sqlTools.updateDataForDBTable(department.getTableName(),
-                                "number = '" + toNumber + "'", "count", String.valueOf(count));
+                    if (countService.change(department, account, new CountChange(toNumber, change, description))) {
+                        rosterCache.invalidate(department, toNumber);
                         return "OK";
                     }
                 }
@@ -762,23 +826,78 @@ public class ServerController {
         return "ERROR";
     }
 
+    /**
+     * 批量修改积分.
+     * 需验证部门部长副部长身份.
+     * 所有修改在同一事务中完成.
+     *
+     * @param changesJson 处于加密状态（使用AES密钥加密）的积分修改数组的Json字符串，
+     *                    元素形如 {"number": "学号", "changeValue": 改变的值, "description": "修改说明"}
+     * @return 若未发生异常，则返回处于加密状态（使用AES密钥加密）的布朗数组的Json字符串，其中元素与积分修改一一对应，
+     *         true表示修改成功，false则表示被修改者不存在
+     */
+    @PostMapping("changeCounts")
+    public String changeCounts(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
+                               String changesJson) {
+        try {
+            Server server = new Server(aesKeyStr, sessionId);
+            if (Tools.verifyAESKey(server, verifyCiphertext)) {
+                Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
+                if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
+                    account = server.aesDecryptData(account);
+                    CountChange[] changes = gson.fromJson(server.aesDecryptData(changesJson), CountChange[].class);
+                    if (changes.length > maxCountChanges) {
+                        return "ERROR";
+                    }
+                    for (CountChange change : changes) {
+                        Integer.parseInt(change.getNumber());// 简单校验学号
+                    }
+                    boolean[] results = countService.changeAll(department, account, Arrays.asList(changes));
+                    List<String> changedNumbers = new ArrayList<>();
+                    for (int i = 0; i < changes.length; i++) {
+                        if (results[i]) {
+                            changedNumbers.add(changes[i].getNumber());
+                        }
+                    }
+                    rosterCache.invalidate(department, changedNumbers, List.of());
+                    return server.aesEncryptData(gson.toJson(results));
+                }
+            } else {
+                return "AES_KEY_ERROR";
+            }
+        } catch (Exception e) {
+            myLog.e("批量修改积分发生异常", e);
+        }
+        return "ERROR";
+    }
+
     /**
      * 获取积分修改记录.
      * 需验证部门部长副部长身份.
+     * 若携带cursor或pageSize则按id从新到旧分页返回，参数同{@link #getAnnouncementList}.
      */
     @PostMapping("getChangeCountHistory")
-    public String getChangeCountHistory(String aesKeyStr, String verifyCiphertext, String departmentJson, String account) {
+    public Object getChangeCountHistory(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
+                                        String cursor, String pageSize) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getChangeCountTableName(), null,
-                            "editor_number", "change_number", "change_value", "description");
-                    if (query == null) {
+                    if (cursor != null || pageSize != null) {
+                        Page<ChangeCountRecord> page = readTools.queryPage(department.getChangeCountTableName(), null,
+                                decryptCursor(server, cursor), decryptPageSize(server, pageSize),
+                                ChangeCountRecord.rowMapper, ChangeCountRecord::getId, ChangeCountRecord.columns);
+                        if (page.getList().isEmpty() && cursor == null) {
+                            return "NO_HISTORY";
+                        }
+                        return server.aesEncryptResponse(writer -> page.writeTo(gson.newJsonWriter(writer)));
+                    }
+                    if (!readTools.exists(department.getChangeCountTableName(), null)) {
                         return "NO_HISTORY";
                     } else {
-                        return server.aesEncryptData(gson.toJson(query));
+                        return server.aesEncryptResponse(writer -> readTools.streamToJson(gson.newJsonWriter(writer),
+                                department.getChangeCountTableName(), null, ChangeCountRecord.rowMapper, ChangeCountRecord.columns));
                     }
                 }
             } else {
@@ -790,6 +909,22 @@ public class ServerController {
         return "ERROR";
     }
 
+    private Long decryptCursor(Server server, String cursor) throws Exception {
+        if (cursor == null) {
+            return null;
+        }
+        cursor = server.aesDecryptData(cursor);
+        return "".equals(cursor) ? null : Long.parseLong(cursor);
+    }
+
+    private int decryptPageSize(Server server, String pageSize) throws Exception {
+        if (pageSize == null) {
+            return defaultPageSize;
+        }
+        int size = Integer.parseInt(server.aesDecryptData(pageSize));
+        return Math.max(1, Math.min(size, maxPageSize));
+    }
+
     /**
      * 添加或更新部门信息.
      * 需验证部门部长副部长身份.
@@ -797,22 +932,22 @@ public class ServerController {
      * @param info 添加或更新的信息
      */
     @PostMapping("addDepartmentInfo")
-    public String addDepartmentInfo(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public String addDepartmentInfo(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                                     String info) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     info = server.aesDecryptData(info);
                     String departmentName = department.name();
                     List<Map<String, Object>> query = sqlTools.queryDBTable(SQLTools.departmentInfo,
-                            "department = '" + departmentName + "'", "*");
+                            SQLTools.where("department = ?", departmentName), "*");
                     if (query == null) {
                         sqlTools.insertDataInDBTable(SQLTools.departmentInfo,
                                 "department", departmentName, "info", info);
                     } else {
-                        sqlTools.updateDataForDBTable(SQLTools.departmentInfo, "department = '" + departmentName + "'",
+                        sqlTools.updateDataForDBTable(SQLTools.departmentInfo, SQLTools.where("department = ?", departmentName),
                                 "info", info);
                     }
                     return "OK";
@@ -830,12 +965,12 @@ public class ServerController {
      * 获取部门介绍.
      */
     @PostMapping("getDepartmentInfo")
-    public String getDepartmentInfo(String aesKeyStr, String verifyCiphertext, String departmentJson) {
+    public String getDepartmentInfo(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
-                List<Map<String, Object>> query = sqlTools.queryDBTable(SQLTools.departmentInfo, "department = '" + department.name() + "'",
+                List<Map<String, Object>> query = readTools.queryDBTable(SQLTools.departmentInfo, SQLTools.where("department = ?", department.name()),
                         "info");
                 if (query == null) {
                     return server.aesEncryptData("no-info");
@@ -862,10 +997,10 @@ public class ServerController {
      * @param email 邮箱
      */
     @PostMapping("uploadPersonalInfo")
-    public String uploadPersonalInfo(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public String uploadPersonalInfo(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                                      String subject, String sex, String phone, String qq, String teacher, String email) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
@@ -878,21 +1013,22 @@ public class ServerController {
                 if ("".equals(email)) {
                     email = "no-mail";
                 } else {
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                             "mail", "mail_enable");
                     if (query != null) {
                         Map<String, Object> user = query.get(0);
                         String srcMail = String.valueOf(user.get("mail"));
                         String mailEnable = String.valueOf(user.get("mail_enable"));
                         if (!("1".equals(mailEnable) && email.equals(srcMail))) {
-                            sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                            sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                                     "mail_enable", "0");
                         }
                     }
                 }
-                sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         "subject", subject, "sex", sex, "phone", phone,
                         "qq", qq, "teacher", teacher, "mail", email, "info_enable", "1");
+                rosterCache.invalidate(department, account);
                 return "OK";
             } else {
                 return "AES_KEY_ERROR";
@@ -907,13 +1043,13 @@ public class ServerController {
      * 获取信息完善标识.
      */
     @PostMapping("getEnable")
-    public String getEnable(String aesKeyStr, String verifyCiphertext, String departmentJson, String account) {
+    public String getEnable(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 account = server.aesDecryptData(account);
-                List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'",
+                List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                         "info_enable", "mail_enable", "mail");
                 if (query != null) {
                     Map<String, Object> user = query.get(0);
@@ -946,16 +1082,21 @@ public class ServerController {
      * @param flagsJson 所添加成员的身份标识数组的Json字符串
      */
     @PostMapping("addMember")
-    public String addMember(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public CompletableFuture<Object> addMember(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
+                            String number, String name, String flagsJson) {
+        return authExecutor.submit(() -> addMemberTask(aesKeyStr, verifyCiphertext, sessionId, departmentJson, account, number, name, flagsJson));
+    }
+
+    private String addMemberTask(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                             String number, String name, String flagsJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     number = server.aesDecryptData(number);
                     Integer.parseInt(number);// 简单校验学号
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + number + "'", "*");
+                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", number), "*");
                     if (query != null) {
                         return "MEMBER_ALREADY_EXISTS";
                     }
@@ -971,8 +1112,7 @@ public class ServerController {
                     password = Tools.getKeccak512Password(Tools.getKeccak512Password(password, ""), salt);
                     sqlTools.insertDataInDBTable(department.getTableName(), "number", number, "name", name,
                             "flag", flag, "password", password, "salt", salt);
-                    sqlTools.executeAny("insert " + department.getSignInTableName() + " (id, number, name) select id, number, name from "
-                            + department.getTableName() + " where number = '" + number + "'");
+                    rosterCache.invalidate(department, number);
                     return "OK";
                 }
             } else {
@@ -991,21 +1131,25 @@ public class ServerController {
      * @param number 所移除的部门成员的学号
      */
     @PostMapping("delMember")
-    public String delMember(String aesKeyStr, String verifyCiphertext, String departmentJson, String account, String number) {
+    public String delMember(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account, String number) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     number = server.aesDecryptData(number);
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + number + "'", "*");
+                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", number), "*");
                     if (query == null) {
                         return "MEMBER_NOT_EXISTS";
                     }
-                    sqlTools.delDataFromDBTable(department.getTableName(), "number = '" + number + "'");
-                    sqlTools.delDataFromDBTable(department.getAnnouncementTableName(), "number = '" + number + "'");
-                    sqlTools.delDataFromDBTable(department.getChangeCountTableName(),
-                            "change_number = '" + number + "'");
+                    sqlTools.beginUnitOfWork()
+                            .delete(department.getTableName(), SQLTools.where("number = ?", number))
+                            .delete(department.getAnnouncementTableName(), SQLTools.where("number = ?", number))
+                            .delete(department.getChangeCountTableName(), SQLTools.where("change_number = ?", number))
+                            .delete(department.getSignInRecordTableName(), SQLTools.where("number = ?", number))
+                            .commit();
+                    rosterCache.invalidate(department, List.of(), List.of(number));
+                    AdminSessionCache.invalidate(department, number);
                     String photoPath = String.valueOf(query.get(0).get("photo_path"));
                     if (!(photoPath.equals("null") || photoPath.equals("default_photo"))) {
                         File photo = new File(photoPath);
@@ -1014,6 +1158,7 @@ public class ServerController {
                                 myLog.d("文件" + photo.getAbsolutePath() + "删除失败");
                             }
                         }
+                        headPhotoCache.invalidate(photoPath);
                     }
                     return "OK";
                 }
@@ -1036,16 +1181,17 @@ public class ServerController {
      * @param flagsJson 待更新部门成员的新身份标识数组的Json字符串
      */
     @PostMapping("updateMember")
-    public String updateMember(String aesKeyStr, String verifyCiphertext, String departmentJson, String account,
+    public String updateMember(String aesKeyStr, String verifyCiphertext, String sessionId, String departmentJson, String account,
                                String oldNumber, String number, String name, String flagsJson) {
         try {
-            Server server = new Server(aesKeyStr);
+            Server server = new Server(aesKeyStr, sessionId);
             if (Tools.verifyAESKey(server, verifyCiphertext)) {
                 Tools.DepartmentEnum department = gson.fromJson(server.aesDecryptData(departmentJson), Tools.DepartmentEnum.class);
                 if (Tools.verifyAdministrators(server, sqlTools, department, account)) {
                     File oldPhoto = null;
+                    String oldPhotoPath = null;
                     oldNumber = server.aesDecryptData(oldNumber);
-                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), "number = '" + oldNumber + "'", "*");
+                    List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", oldNumber), "*");
                     if (query == null) {
                         return "MEMBER_NOT_EXISTS";
                     }
@@ -1055,22 +1201,34 @@ public class ServerController {
                         if (!(photoPath.equals("null") || photoPath.equals("default_photo"))) {
                             oldPhoto = new File(photoPath);
                             oldPhoto = oldPhoto.exists() ? oldPhoto : null;
+                            oldPhotoPath = photoPath;
                         }
-                        query = sqlTools.queryDBTable(department.getTableName(), "number = '" + number + "'", "*");
+                        query = sqlTools.queryDBTable(department.getTableName(), SQLTools.where("number = ?", number), "*");
                         if (query != null) {
                             return "MEMBER_ALREADY_EXISTS_IF_UPDATE";
                         }
                     }
                     name = server.aesDecryptData(name);
                     String flag = getFlagString(server, flagsJson);
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + oldNumber + "'",
-                            "number", number, "name", name, "flag", flag);
-                    sqlTools.updateDataForDBTable(department.getAnnouncementTableName(),
-                            "number = '" + oldNumber + "'", "number", number);
-                    sqlTools.updateDataForDBTable(department.getChangeCountTableName(),
-                            "editor_number = '" + oldNumber + "'", "editor_number", number);
-                    sqlTools.updateDataForDBTable(department.getChangeCountTableName(),
-                            "change_number = '" + oldNumber + "'", "change_number", number);
+                    sqlTools.beginUnitOfWork()
+                            .update(department.getTableName(), SQLTools.where("number = ?", oldNumber),
+                                    "number", number, "name", name, "flag", flag)
+                            .update(department.getAnnouncementTableName(),
+                                    SQLTools.where("number = ?", oldNumber), "number", number)
+                            .update(department.getChangeCountTableName(),
+                                    SQLTools.where("editor_number = ?", oldNumber), "editor_number", number)
+                            .update(department.getChangeCountTableName(),
+                                    SQLTools.where("change_number = ?", oldNumber), "change_number", number)
+                            .update(department.getSignInRecordTableName(),
+                                    SQLTools.where("number = ?", oldNumber), "number", number)
+                            .commit();
+                    if (oldNumber.equals(number)) {
+                        rosterCache.invalidate(department, number);
+                    } else {
+                        rosterCache.invalidate(department, List.of(number), List.of(oldNumber));
+                    }
+                    AdminSessionCache.invalidate(department, oldNumber);
+                    AdminSessionCache.invalidate(department, number);
                     if (oldPhoto != null) {
                         String path = oldPhoto.getAbsolutePath();
                         String filename = oldPhoto.getName();
@@ -1078,6 +1236,7 @@ public class ServerController {
                         if (!oldPhoto.renameTo(new File(path, filename))) {
                             myLog.d("文件" + oldPhoto.getAbsolutePath() + "重命名为" + path + "\\" + filename + "失败");
                         }
+                        headPhotoCache.invalidate(oldPhotoPath);
                     }
                     return "OK";
                 }
@@ -1121,21 +1280,15 @@ public class ServerController {
     @GetMapping("verifyEmail")
     public String verifyTheEmail(String number, String v1, String v2) {
         try {
-            Tools.DepartmentEnum[] departments = Tools.DepartmentEnum.values();
-            Tools.DepartmentEnum department = null;
-            for (Tools.DepartmentEnum the : departments) {
-                if (v1.equals(Tools.getKeccak512Password(the.name(), ""))) {
-                    department = the;
-                }
-            }
+            Tools.DepartmentEnum department = Tools.DepartmentEnum.fromVerifyToken(v1);
             if (department == null) {
                 return "链接错误";
             }
             List<Map<String, Object>> query = sqlTools.queryDBTable(department.getTableName(),
-                    "number = '" + number + "'", "mail", "mail_enable", "mail_verify_time");
+                    SQLTools.where("number = ?", number), "mail", "mail_enable", "mail_verify_time");
             if (query != null) {
                 Map<String, Object> user = query.get(0);
-                if (v2.equals(Tools.getKeccak512Password(String.valueOf(user.get("mail")), ""))) {
+                if (Tools.verifyKeccak512Password(v2, String.valueOf(user.get("mail")), "")) {
                     if ("1".equals(String.valueOf(user.get("mail_enable")))) {
                         return "已验证";
                     }
@@ -1143,7 +1296,7 @@ public class ServerController {
                     if (System.currentTimeMillis() - time > 24 * 60 * 60000/*24小时*/) {
                         return "链接已失效";
                     }
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + number + "'",
+                    sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", number),
                             "mail_enable", "1");
                     return "验证成功";
                 }
@@ -0,0 +1,158 @@
+package com.tdsata.ourappserver.util;
+
+import javax.crypto.Cipher;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * AES加解密引擎.
+ *
+ * <p>每个线程持有已初始化的加密与解密Cipher，若本次使用的AES密钥与上次相同则跳过
+ *    Cipher.getInstance与cipher.init（即算法提供者查找与密钥扩展）；
+ *    解密时Base64直接解码到线程内复用的缓冲区，再由Cipher解密到另一复用缓冲区。
+ *    明文缓冲区中可能是密码等敏感数据，每次解密后清零，不在请求结束后保留。
+ *    流式加密响应体另用一个Cipher，与逐字段加密互不影响。</p>
+ */
+public class AESCipherEngine {
+    private static final String transformation = "AES";
+    private static final int maxReusableBufferSize = 64 * 1024;// 超过64KB的数据不使用复用缓冲区，避免线程长期占用大块内存
+    private static final ThreadLocal<State> states = ThreadLocal.withInitial(State::new);
+
+    private AESCipherEngine() {
+    }
+
+    /**
+     * 使用AES密钥加密数据.
+     *
+     * @param key AES密钥
+     * @param data 待加密的数据
+     * @return 加密后的密文，使用Base64编码
+     */
+    public static String encrypt(Key key, String data) throws GeneralSecurityException {
+        State state = states.get();
+        Cipher cipher = state.encryptor(key);
+        try {
+            return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes()));
+        } catch (GeneralSecurityException | RuntimeException e) {
+            state.encryptKey = null;// 下次使用时重新初始化
+            throw e;
+        }
+    }
+
+    /**
+     * 使用AES密钥解密数据.
+     *
+     * @param key AES密钥
+     * @param ciphertext 待解密的使用Base64编码的密文
+     * @return 解密后的数据
+     */
+    public static String decrypt(Key key, String ciphertext) throws GeneralSecurityException {
+        State state = states.get();
+        Cipher cipher = state.decryptor(key);
+        try {
+            byte[] src = ciphertext.getBytes(StandardCharsets.ISO_8859_1);
+            byte[] decoded = state.decodeBuffer((src.length + 3) / 4 * 3);
+            int decodedLength = Base64.getDecoder().decode(src, decoded);
+            int outputSize = cipher.getOutputSize(decodedLength);
+            byte[] output = state.outputBuffer(outputSize);
+            try {
+                int length = cipher.doFinal(decoded, 0, decodedLength, output, 0);
+                return new String(output, 0, length, StandardCharsets.UTF_8);
+            } finally {
+                Arrays.fill(output, 0, outputSize, (byte) 0);
+            }
+        } catch (GeneralSecurityException | RuntimeException e) {
+            state.decryptKey = null;// 下次使用时重新初始化
+            throw e;
+        }
+    }
+
+    /**
+     * 获取当前线程用于流式加密的Cipher.
+     * 调用者需在同一线程内以doFinal结束本次加密（关闭CipherOutputStream即会调用）；
+     * 若中途放弃，需调用{@link #discardStreamEncryptor()}.
+     *
+     * @param key AES密钥
+     * @return 已使用密钥初始化的加密Cipher
+     */
+    public static Cipher streamEncryptor(Key key) throws GeneralSecurityException {
+        State state = states.get();
+        if (state.streamEncryptor == null) {
+            state.streamEncryptor = Cipher.getInstance(transformation);
+        }
+        if (!key.equals(state.streamKey)) {
+            state.streamKey = null;
+            state.streamEncryptor.init(Cipher.ENCRYPT_MODE, key);
+            state.streamKey = key;
+        }
+        return state.streamEncryptor;
+    }
+
+    /**
+     * 放弃当前线程未完成的流式加密，下次获取时重新初始化.
+     */
+    public static void discardStreamEncryptor() {
+        states.get().streamKey = null;
+    }
+
+    /**
+     * 线程内的加解密状态.
+     */
+    private static class State {
+        private Cipher encryptor;
+        private Cipher decryptor;
+        private Key encryptKey;// encryptor当前初始化所用的密钥
+        private Key decryptKey;// decryptor当前初始化所用的密钥
+        private Cipher streamEncryptor;
+        private Key streamKey;// streamEncryptor当前初始化所用的密钥
+        private byte[] decodeBuffer = new byte[0];
+        private byte[] outputBuffer = new byte[0];
+
+        private Cipher encryptor(Key key) throws GeneralSecurityException {
+            if (encryptor == null) {
+                encryptor = Cipher.getInstance(transformation);
+            }
+            if (!key.equals(encryptKey)) {
+                encryptKey = null;
+                encryptor.init(Cipher.ENCRYPT_MODE, key);
+                encryptKey = key;
+            }
+            return encryptor;
+        }
+
+        private Cipher decryptor(Key key) throws GeneralSecurityException {
+            if (decryptor == null) {
+                decryptor = Cipher.getInstance(transformation);
+            }
+            if (!key.equals(decryptKey)) {
+                decryptKey = null;
+                decryptor.init(Cipher.DECRYPT_MODE, key);
+                decryptKey = key;
+            }
+            return decryptor;
+        }
+
+        private byte[] decodeBuffer(int size) {
+            if (size > maxReusableBufferSize) {
+                return new byte[size];
+            }
+            if (decodeBuffer.length < size) {
+                decodeBuffer = new byte[size];
+            }
+            return decodeBuffer;
+        }
+
+        private byte[] outputBuffer(int size) {
+            if (size > maxReusableBufferSize) {
+                return new byte[size];
+            }
+            if (outputBuffer.length < size) {
+                outputBuffer = new byte[size];
+            }
+            return outputBuffer;
+        }
+    }
+}
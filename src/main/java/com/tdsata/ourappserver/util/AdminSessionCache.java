@@ -0,0 +1,125 @@
+package com.tdsata.ourappserver.util;
+
+import org.springframework.dao.DataAccessException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 部长副部长身份的缓存.
+ *
+ * <p>部长副部长登录时向temp字段存储AES密钥字符串，校验身份时比较temp字段与上传的AES密钥字符串。
+ *    本缓存保存（部门, 学号）与已校验通过的AES密钥字符串的SHA-256摘要的对应关系，不保存密钥本身，登录时直接写入，
+ *    其余时候在校验通过后写入，一段时间后过期，过期后重新查询数据库。
+ *    只缓存校验通过的结果：缓存的密钥与上传的不一致时仍查询数据库，因此缓存最多使校验多查询一次，
+ *    不会使本应通过的校验失败。</p>
+ *
+ * <p>temp字段同时用于邮件验证码，修改temp字段或修改、移除成员后需调用{@link #invalidate}，
+ *    否则已失效的身份在过期前仍能通过校验。
+ *    EmailController每次请求都创建新的SQLTools，因此缓存为静态成员，由所有SQLTools共享。
+ *    查询在映射的锁外进行；查询期间若有失效操作或重新登录，则不缓存本次查询的结果，
+ *    避免留下失效前的身份或用已被新登录取代的密钥覆盖新身份。
+ *    校验失败不移除已缓存的身份，使用错误密钥的请求不会影响真正的部长副部长。</p>
+ */
+public final class AdminSessionCache {
+    private static final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();// "部门:学号"与已校验通过的身份的对应关系
+    private static final AtomicLong invalidateCount = new AtomicLong();// 失效与登录操作的次数，用于丢弃与之并发的查询结果
+    private static volatile long expireMillis = 30 * 60 * 1000;// 身份缓存的有效时长
+
+    private AdminSessionCache() {
+    }
+
+    /**
+     * 设置身份缓存的有效时长.
+     *
+     * @param millis 有效时长（单位：毫秒）
+     */
+    public static void setExpireMillis(long millis) {
+        expireMillis = millis;
+    }
+
+    /**
+     * 校验部门部长副部长身份.
+     * 缓存未命中、已过期或与上传的AES密钥字符串不一致时查询数据库.
+     *
+     * @param sqlTools 查询主库的SQLTools
+     * @param department 账号所属部门
+     * @param number 账号
+     * @param aesKey 上传的AES密钥字符串
+     * @return 若确为部门部长副部长身份返回true，否则返回false
+     */
+    public static boolean verify(SQLTools sqlTools, Tools.DepartmentEnum department, String number, String aesKey) throws DataAccessException {
+        String key = getKey(department, number);
+        Session session = sessions.get(key);
+        if (session != null && session.matches(aesKey)) {
+            return true;
+        }
+        long invalidateCountBefore = invalidateCount.get();
+        List<Map<String, Object>> list = sqlTools.queryDBTable(department.getTableName(),
+                SQLTools.where("number = ?", number), SQLTools.tempKey);
+        if (list == null || !String.valueOf(list.get(0).get(SQLTools.tempKey)).equals(aesKey)) {
+            return false;
+        }
+        // 在映射内比较失效次数，使比较与写入不被失效操作的移除打断
+        sessions.compute(key, (k, old) -> invalidateCount.get() == invalidateCountBefore ? new Session(aesKey) : old);
+        return true;
+    }
+
+    /**
+     * 记录部长副部长登录.
+     * 需在向temp字段写入AES密钥字符串后调用.
+     * 同时丢弃登录前开始的查询结果，使旧密钥的校验不会覆盖新身份.
+     *
+     * @param department 账号所属部门
+     * @param number 账号
+     * @param aesKey 写入temp字段的AES密钥字符串
+     */
+    public static void put(Tools.DepartmentEnum department, String number, String aesKey) {
+        invalidateCount.incrementAndGet();
+        sessions.put(getKey(department, number), new Session(aesKey));
+    }
+
+    /**
+     * 使账号的身份缓存失效.
+     * 需在数据库修改完成后调用.
+     *
+     * @param department 账号所属部门
+     * @param number 账号
+     */
+    public static void invalidate(Tools.DepartmentEnum department, String number) {
+        invalidateCount.incrementAndGet();
+        sessions.remove(getKey(department, number));
+    }
+
+    private static String getKey(Tools.DepartmentEnum department, String number) {
+        return department.name() + ":" + number;
+    }
+
+    private static byte[] fingerprint(String aesKey) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(aesKey.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256为JDK必须提供的算法
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Session {
+        private final byte[] fingerprint;// AES密钥字符串的SHA-256摘要
+        private final long expireAt;
+
+        private Session(String aesKey) {
+            this.fingerprint = fingerprint(aesKey);
+            this.expireAt = System.currentTimeMillis() + expireMillis;
+        }
+
+        private boolean matches(String aesKey) {
+            return System.currentTimeMillis() < expireAt && MessageDigest.isEqual(fingerprint, fingerprint(aesKey));
+        }
+    }
+}
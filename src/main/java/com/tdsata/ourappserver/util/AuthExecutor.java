@@ -0,0 +1,93 @@
+package com.tdsata.ourappserver.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 身份验证任务线程池.
+ *
+ * <p>登录、修改密码、添加成员等请求需进行RSA解密与Keccak512摘要计算，CPU开销大；
+ *    这些请求在固定大小的线程池中执行，使其突发时不会占满Tomcat请求线程而拖慢其他接口。
+ *    等待队列已满时立即拒绝，返回503及Retry-After响应头。
+ *    任务中同时有多次阻塞的数据库查询，线程数应按数据库连接池大小而非CPU核数设置，
+ *    否则CPU空闲时也会因线程不足而拒绝请求。</p>
+ */
+public class AuthExecutor {
+    private static final Tools.MyLog myLog = new Tools.MyLog(AuthExecutor.class);
+    private static final long rejectLogIntervalMillis = 10000;// 拒绝日志的最小间隔
+    private final ThreadPoolExecutor executor;
+    private final int retryAfterSeconds;// 拒绝时建议客户端重试的间隔（秒）
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalWaitMillis = new LongAdder();// 任务排队等待的累计时长
+    private final AtomicLong lastRejectLog = new AtomicLong();
+
+    public AuthExecutor(String name, int threads, int queueCapacity, int retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交任务.
+     * 任务在提交线程的客户端（见{@link SQLTools#setCurrentClient}）下执行.
+     *
+     * @param task 任务，其返回值作为响应
+     * @return 任务结果；若等待队列已满则立即完成，结果为503响应
+     */
+    public CompletableFuture<Object> submit(Supplier<Object> task) {
+        long submitTime = System.currentTimeMillis();
+        String client = SQLTools.getCurrentClient();
+        try {
+            CompletableFuture<Object> future = CompletableFuture.supplyAsync(() -> {
+                totalWaitMillis.add(System.currentTimeMillis() - submitTime);
+                SQLTools.setCurrentClient(client);
+                try {
+                    return task.get();
+                } finally {
+                    SQLTools.setCurrentClient(null);
+                }
+            }, executor);
+            submitted.increment();
+            return future;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            long last = lastRejectLog.get();
+            if (submitTime - last > rejectLogIntervalMillis && lastRejectLog.compareAndSet(last, submitTime)) {
+                myLog.w("身份验证线程池已满，拒绝请求；" + getStats());
+            }
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .body("BUSY"));
+        }
+    }
+
+    /**
+     * 获取线程池的运行统计.
+     */
+    public String getStats() {
+        long completed = executor.getCompletedTaskCount();
+        return "active=" + executor.getActiveCount()
+                + ", queued=" + executor.getQueue().size()
+                + ", submitted=" + submitted.sum()
+                + ", completed=" + completed
+                + ", rejected=" + rejected.sum()
+                + ", avgWaitMillis=" + (completed == 0 ? 0 : totalWaitMillis.sum() / completed);
+    }
+}
@@ -0,0 +1,73 @@
+package com.tdsata.ourappserver.util;
+
+import com.tdsata.ourappserver.bean.CountChange;
+import org.springframework.dao.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 积分修改服务.
+ *
+ * <p>积分在数据库中以 count = count + ? 原地累加，与积分修改记录的插入在同一事务中完成，
+ *    多名管理员同时修改同一成员的积分时不会丢失更新；被修改者不存在时不写入修改记录。</p>
+ */
+public class CountService {
+    private static final String noDescription = "no-description";
+    private final SQLTools sqlTools;
+
+    public CountService(SQLTools sqlTools) {
+        this.sqlTools = sqlTools;
+    }
+
+    /**
+     * 修改一名成员的积分.
+     *
+     * @param department 部门
+     * @param editorNumber 修改者的学号
+     * @param change 积分修改
+     * @return 若被修改者存在且修改成功则返回true，否则返回false
+     */
+    public boolean change(Tools.DepartmentEnum department, String editorNumber, CountChange change) throws DataAccessException {
+        return changeAll(department, editorNumber, List.of(change))[0];
+    }
+
+    /**
+     * 在同一事务中批量修改成员的积分.
+     * 积分更新与修改记录的插入各以一个批次发送.
+     *
+     * @param department 部门
+     * @param editorNumber 修改者的学号
+     * @param changes 积分修改列表
+     * @return 与积分修改一一对应，true表示修改成功，false表示被修改者不存在
+     */
+    public boolean[] changeAll(Tools.DepartmentEnum department, String editorNumber, List<CountChange> changes) throws DataAccessException {
+        boolean[] results = new boolean[changes.size()];
+        if (changes.isEmpty()) {
+            return results;
+        }
+        List<Object[]> updateRows = new ArrayList<>(changes.size());
+        for (CountChange change : changes) {
+            updateRows.add(new Object[]{change.getChangeValue(), change.getNumber()});
+        }
+        sqlTools.executeInTransaction(status -> {
+            int[] updated = sqlTools.batchUpdate(department.getTableName(), "count = count + ?", "number = ?", updateRows);
+            List<Object[]> historyRows = new ArrayList<>(changes.size());
+            for (int i = 0; i < changes.size(); i++) {
+                if (updated[i] != 0) {// 成功但驱动未返回行数时为负值
+                    results[i] = true;
+                    CountChange change = changes.get(i);
+                    String description = change.getDescription();
+                    if (description == null || "".equals(description)) {
+                        description = noDescription;
+                    }
+                    historyRows.add(new Object[]{editorNumber, change.getNumber(), change.getChangeValue(), description});
+                }
+            }
+            sqlTools.batchInsert(department.getChangeCountTableName(),
+                    new String[]{"editor_number", "change_number", "change_value", "description"}, historyRows);
+            return null;
+        });
+        return results;
+    }
+}
@@ -0,0 +1,81 @@
+package com.tdsata.ourappserver.util;
+
+import org.springframework.util.StreamUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Base64;
+
+/**
+ * 以流的方式加密输出的响应体.
+ *
+ * <p>数据在写出时依次经过 Json序列化 --> AES加密 --> Base64编码 直接写入响应输出流，
+ *    不再先后生成Json字符串、字节数组、密文与Base64字符串多份完整副本；
+ *    客户端收到的内容与{@link Server#aesEncryptData(String)}的结果完全一致。</p>
+ */
+public class EncryptedResponse {
+    private final Key aesKey;
+    private final Body body;
+    private final byte[] plaintext;
+
+    EncryptedResponse(Key aesKey, Body body) {
+        this.aesKey = aesKey;
+        this.body = body;
+        this.plaintext = null;
+    }
+
+    /**
+     * @param plaintext 已按平台默认字符集编码的明文，写出时直接加密，不再经过序列化与编码
+     */
+    EncryptedResponse(Key aesKey, byte[] plaintext) {
+        this.aesKey = aesKey;
+        this.body = null;
+        this.plaintext = plaintext;
+    }
+
+    /**
+     * 将加密后的响应体写入输出流.
+     * 不会关闭传入的输出流.
+     *
+     * @param outputStream 响应输出流
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        Cipher cipher;
+        try {
+            cipher = AESCipherEngine.streamEncryptor(aesKey);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("初始化AES加密失败", e);
+        }
+        OutputStream base64 = Base64.getEncoder().wrap(StreamUtils.nonClosing(outputStream));
+        try {
+            if (plaintext != null) {
+                try (OutputStream encrypted = new CipherOutputStream(base64, cipher)) {
+                    encrypted.write(plaintext);
+                }
+                return;
+            }
+            // 与aesEncryptData一致，使用平台默认字符集编码明文
+            try (Writer writer = new OutputStreamWriter(new CipherOutputStream(base64, cipher), Charset.defaultCharset())) {
+                body.writeTo(writer);
+            }
+        } catch (IOException | RuntimeException e) {
+            AESCipherEngine.discardStreamEncryptor();
+            throw e;
+        }
+    }
+
+    /**
+     * 响应体明文的写出方式.
+     */
+    @FunctionalInterface
+    public interface Body {
+        void writeTo(Writer writer) throws IOException;
+    }
+}
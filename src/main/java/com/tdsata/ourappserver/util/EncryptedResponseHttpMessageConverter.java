@@ -0,0 +1,58 @@
+package com.tdsata.ourappserver.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 将{@link EncryptedResponse}以text/plain形式流式写入响应.
+ *
+ * <p>与原先返回String时使用的StringHttpMessageConverter一致，接受任意Accept请求头，
+ *    响应的Content-Type始终为text/plain。
+ *    写出在控制器返回之后进行，此时发生的异常无法再由控制器转换为"ERROR"，在此记录日志。</p>
+ */
+public class EncryptedResponseHttpMessageConverter extends AbstractHttpMessageConverter<EncryptedResponse> {
+    private static final MediaType contentType = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+    private final Tools.MyLog myLog = new Tools.MyLog(EncryptedResponseHttpMessageConverter.class);
+
+    public EncryptedResponseHttpMessageConverter() {
+        super(StandardCharsets.UTF_8, MediaType.TEXT_PLAIN, MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return EncryptedResponse.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected EncryptedResponse readInternal(Class<? extends EncryptedResponse> clazz, HttpInputMessage inputMessage)
+            throws HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("不支持读取加密响应体", inputMessage);
+    }
+
+    @Override
+    protected void addDefaultHeaders(HttpHeaders headers, EncryptedResponse response, MediaType type) throws IOException {
+        super.addDefaultHeaders(headers, response, contentType);
+    }
+
+    @Override
+    protected void writeInternal(EncryptedResponse response, HttpOutputMessage outputMessage) throws IOException {
+        try {
+            response.writeTo(outputMessage.getBody());
+        } catch (IOException | RuntimeException e) {
+            myLog.e("写出加密响应体发生异常", e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.tdsata.ourappserver.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 头像Base64编码的缓存.
+ *
+ * <p>以头像文件路径为键缓存读取并编码后的结果，按占用字节数限制容量，超出时淘汰最久未使用的条目。
+ *    Base64编码只含ASCII字符，每个字符按1字节计。
+ *    上传、重命名或删除头像文件后需调用{@link #invalidate}；
+ *    文件读取期间若有失效操作，则不缓存本次读取的结果，避免留下修改前的头像。</p>
+ */
+public class HeadPhotoCache {
+    /**
+     * 无头像或读取失败时返回的结果.
+     */
+    public static final String defaultPhoto = "default_photo";
+    private static final long statsLogIntervalMillis = 10 * 60 * 1000;// 输出统计日志的最小间隔
+    private final Tools.MyLog myLog = new Tools.MyLog(HeadPhotoCache.class);
+    private final long maxBytes;// 缓存占用的最大字节数
+    private final LinkedHashMap<String, String> cache = new LinkedHashMap<>(64, 0.75f, true);// 按访问顺序排列
+    private long bytes;// 缓存当前占用的字节数，由cache的锁保护
+    private final AtomicLong invalidateCount = new AtomicLong();
+    private final AtomicLong lastStatsLog = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public HeadPhotoCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取头像的Base64编码.
+     * 未命中时读取头像文件并缓存.
+     *
+     * @param path 头像文件路径
+     * @return 头像的Base64编码，若无头像或读取失败则返回"default_photo"
+     */
+    public String get(String path) {
+        if (path.equals("null") || path.equals(defaultPhoto)) {
+            return defaultPhoto;
+        }
+        String photo;
+        synchronized (cache) {
+            photo = cache.get(path);
+        }
+        if (photo != null) {
+            hits.increment();
+            logStats();
+            return photo;
+        }
+        misses.increment();
+        long invalidateCountBefore = invalidateCount.get();
+        photo = read(path);
+        if (photo == null) {
+            return defaultPhoto;
+        }
+        if (photo.length() <= maxBytes) {
+            synchronized (cache) {
+                if (invalidateCount.get() == invalidateCountBefore) {
+                    String old = cache.put(path, photo);
+                    bytes += photo.length() - (old == null ? 0 : old.length());
+                    evict();
+                }
+            }
+        }
+        logStats();
+        return photo;
+    }
+
+    /**
+     * 使头像文件的缓存失效.
+     * 需在头像文件修改完成后调用.
+     *
+     * @param path 头像文件路径
+     */
+    public void invalidate(String path) {
+        synchronized (cache) {
+            invalidateCount.incrementAndGet();
+            String old = cache.remove(path);
+            if (old != null) {
+                bytes -= old.length();
+            }
+        }
+    }
+
+    /**
+     * 获取缓存的运行统计.
+     */
+    public String getStats() {
+        long hit = hits.sum();
+        long lookup = hit + misses.sum();
+        int entries;
+        long usedBytes;
+        synchronized (cache) {
+            entries = cache.size();
+            usedBytes = bytes;
+        }
+        return "entries=" + entries
+                + ", bytes=" + usedBytes + "/" + maxBytes
+                + ", hits=" + hit
+                + ", misses=" + (lookup - hit)
+                + ", hitRate=" + (lookup == 0 ? 0 : hit * 100 / lookup) + "%"
+                + ", evictions=" + evictions.sum();
+    }
+
+    // 调用时需持有cache的锁
+    private void evict() {
+        Iterator<Map.Entry<String, String>> iterator = cache.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().length();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private void logStats() {
+        long now = System.currentTimeMillis();
+        long last = lastStatsLog.get();
+        if (now - last > statsLogIntervalMillis && lastStatsLog.compareAndSet(last, now)) {
+            myLog.i("头像缓存：" + getStats());
+        }
+    }
+
+    private static String read(String path) {
+        try {
+            File pic = new File(path);
+            try (FileInputStream fis = new FileInputStream(pic)) {
+                long length = pic.length();
+                byte[] picData = new byte[length <= Integer.MAX_VALUE ? (int) length : 0];
+                if (picData.length != 0 && fis.read(picData) > 0) {
+                    return new String(Base64.getEncoder().encode(picData), StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            // ignore
+        }
+        return null;
+    }
+}
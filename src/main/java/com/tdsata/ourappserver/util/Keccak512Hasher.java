@@ -0,0 +1,80 @@
+package com.tdsata.ourappserver.util;
+
+import com.github.aelstad.keccakj.fips202.SHA3_512;
+
+import java.security.MessageDigest;
+
+/**
+ * Keccak512密码摘要工具.
+ *
+ * <p>每个线程复用一个摘要对象；摘要结果通过查表转换为十六进制字符串；
+ *    校验密码时将保存的十六进制摘要还原为字节后以定长时间比较，比较耗时与首个不同字节的位置无关。</p>
+ */
+public class Keccak512Hasher {
+    private static final ThreadLocal<SHA3_512> digests = ThreadLocal.withInitial(SHA3_512::new);
+
+    private Keccak512Hasher() {
+    }
+
+    /**
+     * 计算加盐密码的Keccak512摘要.
+     *
+     * @param password 原密码
+     * @param salt 密码的加盐值
+     * @return 摘要字节数组
+     */
+    public static byte[] digest(String password, String salt) {
+        SHA3_512 keccak512 = digests.get();
+        keccak512.reset();
+        // 与历史数据保持一致，使用平台默认字符集编码
+        return keccak512.digest((password + salt).getBytes());
+    }
+
+    /**
+     * 计算加盐密码的Keccak512摘要，以小写十六进制字符串表示.
+     *
+     * @param password 原密码
+     * @param salt 密码的加盐值
+     * @return 摘要的十六进制字符串
+     */
+    public static String digestHex(String password, String salt) {
+        return Tools.toHexString(digest(password, salt));
+    }
+
+    /**
+     * 校验密码与保存的摘要是否一致.
+     *
+     * @param storedHex 保存的十六进制摘要
+     * @param password 待校验的原密码
+     * @param salt 密码的加盐值
+     * @return 若一致则返回true，否则返回false
+     */
+    public static boolean verify(String storedHex, String password, String salt) {
+        byte[] stored = fromHexString(storedHex);
+        if (stored == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(stored, digest(password, salt));
+    }
+
+    /**
+     * 将十六进制字符串还原为字节数组.
+     *
+     * @return 字节数组，若字符串为空或不是合法的十六进制字符串则返回null
+     */
+    private static byte[] fromHexString(String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            data[i] = (byte) ((high << 4) | low);
+        }
+        return data;
+    }
+}
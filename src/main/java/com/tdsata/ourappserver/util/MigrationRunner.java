@@ -0,0 +1,103 @@
+package com.tdsata.ourappserver.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按版本号执行数据库结构迁移.
+ *
+ * <p>已执行的版本记录在schema_version表中，启动时只执行尚未记录的版本，按版本号从小到大依次执行；
+ *    某一版本执行失败时停止并抛出异常，调用者应终止启动，之后的版本留待下次启动时执行。
+ *    MySQL的DDL无法回滚，因此每个版本的操作都应可重复执行（先检查再修改），
+ *    使执行到一半失败的版本在下次启动时能够继续完成。</p>
+ */
+public class MigrationRunner {
+    /**
+     * 记录已执行版本的数据表表名.
+     */
+    public static final String schemaVersion = "schema_version";
+    private static final Tools.MyLog myLog = new Tools.MyLog(MigrationRunner.class);
+    private final SQLTools sqlTools;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public MigrationRunner(SQLTools sqlTools) {
+        this.sqlTools = sqlTools;
+    }
+
+    /**
+     * 添加一个版本的迁移.
+     *
+     * @param version 版本号，不可重复
+     * @param description 迁移说明
+     * @param step 迁移操作
+     */
+    public MigrationRunner add(int version, String description, Step step) {
+        for (Migration migration : migrations) {
+            if (migration.version == version) {
+                throw new IllegalArgumentException("迁移版本号重复：" + version);
+            }
+        }
+        migrations.add(new Migration(version, description, step));
+        return this;
+    }
+
+    /**
+     * 执行所有尚未执行的版本.
+     *
+     * @throws IllegalStateException 读取已执行的版本或某一版本执行失败时抛出，原异常作为cause
+     */
+    public void run() {
+        Set<Integer> applied;
+        try {
+            sqlTools.executeAny("create table if not exists " + schemaVersion + " ("
+                    + "version int not null primary key, "
+                    + "description varchar(200) not null, "
+                    + "applied_at datetime not null default current_timestamp)");
+            List<Integer> versions = sqlTools.querySQL("select version from " + schemaVersion, (rs, rowNum) -> rs.getInt(1));
+            applied = versions == null ? new HashSet<>() : new HashSet<>(versions);
+        } catch (Exception e) {
+            myLog.e("读取数据库结构版本发生异常", e);
+            throw new IllegalStateException("读取数据库结构版本失败", e);
+        }
+        migrations.sort(Comparator.comparingInt(migration -> migration.version));
+        for (Migration migration : migrations) {
+            if (applied.contains(migration.version)) {
+                continue;
+            }
+            try {
+                long start = System.currentTimeMillis();
+                migration.step.apply(sqlTools);
+                sqlTools.executeUpdate("insert into " + schemaVersion + " (version, description) values (?, ?)",
+                        migration.version, migration.description);
+                myLog.i("数据库结构已迁移至版本" + migration.version + "（" + migration.description + "），耗时"
+                        + (System.currentTimeMillis() - start) + "ms");
+            } catch (Exception e) {
+                myLog.e("数据库结构迁移至版本" + migration.version + "（" + migration.description + "）发生异常", e);
+                throw new IllegalStateException("数据库结构迁移至版本" + migration.version + "（" + migration.description + "）失败", e);
+            }
+        }
+    }
+
+    /**
+     * 一个版本的迁移操作.
+     */
+    @FunctionalInterface
+    public interface Step {
+        void apply(SQLTools sqlTools) throws Exception;
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+
+        private Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
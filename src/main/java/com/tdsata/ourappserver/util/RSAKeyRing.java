@@ -0,0 +1,139 @@
+package com.tdsata.ourappserver.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * RSA密钥环.
+ *
+ * <p>每次更新RSA密钥对都会产生一代新的密钥（以自增id区分）。
+ *    下一代密钥对在后台线程中预先生成，更新时直接发布，不在更新时刻临时生成；
+ *    上一代私钥在宽限期内仍可用于解密，使更新前以旧公钥加密的请求不会失败。</p>
+ */
+public class RSAKeyRing {
+    private static final Tools.MyLog myLog = new Tools.MyLog(RSAKeyRing.class);
+    private final int keySize;// RSA密钥长度
+    private final long graceMillis;// 上一代私钥的宽限时长
+    private final int sessionKeyCacheSize;// 每代密钥缓存的AES密钥数上限
+    private final ExecutorService generator;// 预先生成下一代密钥对的后台线程
+    private int nextId = 1;
+    private Future<KeyPair> nextKeyPair = null;
+    private volatile Generation current = null;
+    private volatile Generation previous = null;
+
+    public RSAKeyRing(int keySize, long graceMillis, int sessionKeyCacheSize) {
+        this.keySize = keySize;
+        this.graceMillis = graceMillis;
+        this.sessionKeyCacheSize = sessionKeyCacheSize;
+        this.generator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rsa-key-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 发布下一代密钥对，当前一代转为上一代并进入宽限期，随后开始预先生成再下一代密钥对.
+     *
+     * @return 新发布的一代密钥
+     */
+    public synchronized Generation rotate() throws Exception {
+        KeyPair keyPair = null;
+        if (nextKeyPair != null) {
+            try {
+                keyPair = nextKeyPair.get();
+            } catch (Exception e) {
+                myLog.w("预先生成RSA密钥对失败，改为即时生成", e);
+            }
+        }
+        if (keyPair == null) {
+            keyPair = generateKeyPair();
+        }
+        Generation generation = new Generation(nextId++, keyPair, sessionKeyCacheSize);
+        Generation old = current;
+        if (old != null) {
+            old.retireAt = System.currentTimeMillis() + graceMillis;
+        }
+        // 先发布上一代再发布当前一代，保证任意时刻读到的当前一代都不会丢失其上一代
+        previous = old;
+        current = generation;
+        nextKeyPair = generator.submit(this::generateKeyPair);
+        return generation;
+    }
+
+    /**
+     * 获取当前一代密钥.
+     *
+     * @return 当前一代密钥，若尚未生成则返回null
+     */
+    public Generation getCurrent() {
+        return current;
+    }
+
+    /**
+     * 获取所有可用于解密的密钥，按从新到旧排列.
+     *
+     * @return 当前一代及仍处于宽限期内的上一代密钥
+     */
+    public List<Generation> getActiveGenerations() {
+        List<Generation> generations = new ArrayList<>(2);
+        Generation current = this.current;
+        Generation previous = this.previous;
+        if (current != null) {
+            generations.add(current);
+        }
+        if (previous != null && previous != current && System.currentTimeMillis() < previous.retireAt) {
+            generations.add(previous);
+        }
+        return generations;
+    }
+
+    private KeyPair generateKeyPair() throws NoSuchAlgorithmException {
+        KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+        rsa.initialize(keySize);
+        return rsa.generateKeyPair();
+    }
+
+    /**
+     * 一代RSA密钥，及由其私钥解密出的AES密钥缓存.
+     */
+    public static class Generation {
+        private final int id;
+        private final PrivateKey privateKey;
+        private final String publicKeyStr;
+        private final SessionKeyCache sessionKeys;
+        private volatile long retireAt = Long.MAX_VALUE;// 私钥停止使用的时间
+
+        private Generation(int id, KeyPair keyPair, int sessionKeyCacheSize) {
+            this.id = id;
+            this.privateKey = keyPair.getPrivate();
+            this.publicKeyStr = new String(Base64.getEncoder().encode(keyPair.getPublic().getEncoded()), StandardCharsets.UTF_8);
+            this.sessionKeys = new SessionKeyCache(sessionKeyCacheSize);
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public String getPublicKeyStr() {
+            return publicKeyStr;
+        }
+
+        public SessionKeyCache getSessionKeys() {
+            return sessionKeys;
+        }
+    }
+}
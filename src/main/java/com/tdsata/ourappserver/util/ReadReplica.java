@@ -0,0 +1,28 @@
+package com.tdsata.ourappserver.util;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * 只读从库.
+ * 持有从库连接池及其JdbcTemplate，供{@link SQLTools#SQLTools(JdbcTemplate, JdbcTemplate)}分流查询使用.
+ */
+public class ReadReplica implements DisposableBean {
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    public ReadReplica(HikariDataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    @Override
+    public void destroy() {
+        dataSource.close();
+    }
+}
@@ -0,0 +1,247 @@
+package com.tdsata.ourappserver.util;
+
+import com.google.gson.Gson;
+import com.tdsata.ourappserver.bean.JsonWritable;
+import com.tdsata.ourappserver.bean.Member;
+import com.tdsata.ourappserver.bean.RosterDelta;
+import org.springframework.dao.DataAccessException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 各部门成员列表的缓存.
+ *
+ * <p>登录与刷新成员列表均返回部门全部成员，缓存序列化后的成员列表Json，请求只需进行各自的AES加密。
+ *    每个部门有一个版本号，成员数据每次修改后版本号递增，缓存随之失效并在下次请求时重新加载。
+ *    版本号以服务启动时的时间戳为起点，重启后不会与重启前发出的版本号重复。</p>
+ *
+ * <p>每次修改涉及的成员学号记入有界的修改日志，客户端携带其已有的版本号时，
+ *    可只返回该版本之后新增、修改与移除的成员；日志已不包含该版本之后的全部修改时返回完整列表。</p>
+ */
+public class RosterCache {
+    private final SQLTools sqlTools;
+    private final Gson gson;
+    private final int maxLogSize;// 每个部门保留的修改日志条数
+    private final Map<Tools.DepartmentEnum, DepartmentState> states = new ConcurrentHashMap<>();
+    private final Map<Tools.DepartmentEnum, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    public RosterCache(SQLTools sqlTools, Gson gson, int maxLogSize) {
+        this.sqlTools = sqlTools;
+        this.gson = gson;
+        this.maxLogSize = maxLogSize;
+        long initialVersion = System.currentTimeMillis();
+        for (Tools.DepartmentEnum department : Tools.DepartmentEnum.values()) {
+            states.put(department, new DepartmentState(initialVersion));
+        }
+    }
+
+    /**
+     * 获取部门成员列表的快照.
+     *
+     * @param department 部门
+     * @return 当前版本的快照
+     */
+    public Snapshot get(Tools.DepartmentEnum department) throws DataAccessException {
+        DepartmentState state = states.get(department);
+        long current = state.getVersion();
+        Snapshot snapshot = snapshots.get(department);
+        if (snapshot != null && snapshot.version == current) {
+            return snapshot;
+        }
+        List<Member> members = sqlTools.queryObjects(department.getTableName(), null, Member.rowMapper, Member.columns);
+        snapshot = new Snapshot(current, members == null ? Collections.emptyList() : members, serialize(members));
+        // 加载期间成员数据再次被修改时，不缓存已过期的快照
+        if (state.getVersion() == current) {
+            snapshots.put(department, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 获取部门成员列表的当前版本号.
+     *
+     * @param department 部门
+     */
+    public long getVersion(Tools.DepartmentEnum department) {
+        return states.get(department).getVersion();
+    }
+
+    /**
+     * 获取客户端版本之后的增量.
+     *
+     * @param snapshot 当前版本的快照
+     * @param department 部门
+     * @param clientVersion 客户端已有的版本号
+     * @return 增量；若修改日志已不包含客户端版本之后的全部修改，或版本号无效，则为完整列表
+     */
+    public RosterDelta delta(Snapshot snapshot, Tools.DepartmentEnum department, long clientVersion) {
+        Set<String> changed = new LinkedHashSet<>();
+        Set<String> removed = new LinkedHashSet<>();
+        if (!states.get(department).collectChanges(clientVersion, snapshot.version, changed, removed)) {
+            return new RosterDelta(snapshot.version, true, snapshot.members, Collections.emptyList());
+        }
+        List<Member> changedMembers = new ArrayList<>(changed.size());
+        for (Member member : snapshot.members) {
+            if (changed.remove(member.getNumber())) {
+                changedMembers.add(member);
+            }
+        }
+        removed.addAll(changed);// 记为修改但已不存在的成员
+        return new RosterDelta(snapshot.version, false, changedMembers, removed);
+    }
+
+    /**
+     * 部门成员数据被修改后调用，记录修改并使缓存失效.
+     * 需在数据库修改完成后调用.
+     *
+     * @param department 部门
+     * @param changed 新增或修改的成员学号
+     * @param removed 移除的成员学号
+     * @return 修改后的版本号
+     */
+    public long invalidate(Tools.DepartmentEnum department, Collection<String> changed, Collection<String> removed) {
+        long version = states.get(department).append(changed, removed, maxLogSize);
+        snapshots.remove(department);
+        return version;
+    }
+
+    /**
+     * 单个成员的数据被修改后调用.
+     *
+     * @param department 部门
+     * @param number 被修改成员的学号
+     * @return 修改后的版本号
+     */
+    public long invalidate(Tools.DepartmentEnum department, String number) {
+        return invalidate(department, List.of(number), List.of());
+    }
+
+    private byte[] serialize(List<Member> members) {
+        if (members == null) {
+            return null;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(members.size() * 160);
+        // 与aesEncryptData一致，使用平台默认字符集编码明文
+        try (Writer writer = new OutputStreamWriter(outputStream, Charset.defaultCharset())) {
+            JsonWritable.writeArray(gson.newJsonWriter(writer), members);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * 某一版本的部门成员列表.
+     */
+    public static class Snapshot {
+        private final long version;
+        private final List<Member> members;
+        private final byte[] json;
+
+        private Snapshot(long version, List<Member> members, byte[] json) {
+            this.version = version;
+            this.members = Collections.unmodifiableList(members);
+            this.json = json;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<Member> getMembers() {
+            return members;
+        }
+
+        /**
+         * 获取成员列表Json按平台默认字符集编码的字节数组.
+         *
+         * @return 若部门没有成员则返回null
+         */
+        public byte[] getJson() {
+            return json;
+        }
+    }
+
+    /**
+     * 部门成员列表的版本号与修改日志.
+     * 版本号递增与日志追加在同一锁内完成，读到某一版本号时该版本及之前的日志均已写入.
+     */
+    private static class DepartmentState {
+        private volatile long version;
+        private long floor;// 日志包含此版本之后的全部修改
+        private final ArrayDeque<Change> log = new ArrayDeque<>();
+
+        private DepartmentState(long initialVersion) {
+            this.version = initialVersion;
+            this.floor = initialVersion;
+        }
+
+        private long getVersion() {
+            return version;
+        }
+
+        private synchronized long append(Collection<String> changed, Collection<String> removed, int maxLogSize) {
+            long newVersion = version + 1;
+            log.addLast(new Change(newVersion, List.copyOf(changed), List.copyOf(removed)));
+            while (log.size() > maxLogSize) {
+                floor = log.removeFirst().version;
+            }
+            version = newVersion;
+            return newVersion;
+        }
+
+        /**
+         * 按顺序合并 (fromVersion, toVersion] 内的修改.
+         *
+         * @return 若日志包含该区间的全部修改则返回true
+         */
+        private synchronized boolean collectChanges(long fromVersion, long toVersion, Set<String> changed, Set<String> removed) {
+            if (fromVersion < floor || fromVersion > toVersion) {
+                return false;
+            }
+            for (Change change : log) {
+                if (change.version <= fromVersion) {
+                    continue;
+                }
+                if (change.version > toVersion) {
+                    break;
+                }
+                for (String number : change.removed) {
+                    changed.remove(number);
+                    removed.add(number);
+                }
+                for (String number : change.changed) {
+                    removed.remove(number);
+                    changed.add(number);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Change {
+        private final long version;
+        private final List<String> changed;
+        private final List<String> removed;
+
+        private Change(long version, List<String> changed, List<String> removed) {
+            this.version = version;
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+}
@@ -1,10 +1,35 @@
 package com.tdsata.ourappserver.util;
 
+import com.google.gson.stream.JsonWriter;
+import com.tdsata.ourappserver.bean.JsonWritable;
+import com.tdsata.ourappserver.bean.Page;
 import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 //@SuppressWarnings("all")
 public class SQLTools {
@@ -20,11 +45,140 @@ public class SQLTools {
      * 储存部门介绍的数据表表名.
      */
     public static final String departmentInfo = "department_info";
+    /**
+     * 流式查询每次从数据库读取的行数.
+     * 需在数据源url中开启useCursorFetch，否则MySQL驱动仍会一次读入全部结果.
+     */
+    public static final int streamFetchSize = 256;
     //-------------------类私有成员----------------------
+    private static final ConcurrentHashMap<String, List<String>> fieldNameCache = new ConcurrentHashMap<>();// 数据表表名与其字段名的对应关系
+    private static final ConcurrentHashMap<String, Long> recentWrites = new ConcurrentHashMap<>();// "客户端/数据表表名"与其最近写入的时间
+    private static final AtomicLong lastSweep = new AtomicLong();// 最近一次清理过期写入记录的时间
+    private static final ThreadLocal<String> currentClient = new ThreadLocal<>();// 当前线程所处理请求的客户端
+    private static final ConcurrentHashMap<DataSource, Boolean> multiQueriesCache = new ConcurrentHashMap<>();// 数据源是否允许一次发送多条语句
+    private static final String anyTable = "*";// 表示写入的数据表未知，视为写入了所有数据表
+    private static final Pattern writeTargetPattern = Pattern.compile(
+            "^\\s*(?:insert\\s+(?:ignore\\s+)?(?:into\\s+)?|replace\\s+(?:into\\s+)?|update\\s+|delete\\s+from\\s+)`?(\\w+)`?",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern readSourcePattern = Pattern.compile("\\b(?:from|join)\\s+`?(\\w+)`?", Pattern.CASE_INSENSITIVE);
+    private static volatile long readYourWritesMillis = 3000;// 写入后该客户端对该表的读取仍走主库的时长
     private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate replicaJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
     public SQLTools(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, null);
+    }
+
+    /**
+     * 构造查询优先走只读从库的SQLTools.
+     * 写入操作始终在主库执行；某客户端（见{@link #setCurrentClient}）写入某数据表后的{@link #setReadYourWritesMillis 一段时间}内，
+     * 该客户端涉及该表的查询仍走主库，以保证写入者随后的查询能读到自己的写入，其他客户端的查询不受影响.
+     * 不属于任何客户端的写入（如启动时的数据库迁移）对所有客户端生效.
+     * 校验身份等要求读到最新数据的查询不应使用本构造方法创建的对象.
+     *
+     * @param jdbcTemplate 主库
+     * @param replicaJdbcTemplate 只读从库，为空则所有查询均走主库
+     */
+    public SQLTools(JdbcTemplate jdbcTemplate, JdbcTemplate replicaJdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        this.replicaJdbcTemplate = replicaJdbcTemplate;
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        this.transactionTemplate = dataSource == null ? null
+                : new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    /**
+     * 设置写入后对该表的查询仍走主库的时长，需大于从库的复制延迟.
+     *
+     * @param millis 时长（毫秒）
+     */
+    public static void setReadYourWritesMillis(long millis) {
+        readYourWritesMillis = millis;
+    }
+
+    /**
+     * 设置当前线程所处理请求的客户端.
+     * 同一客户端的写入与随后的查询视为同一写入者，见{@link #SQLTools(JdbcTemplate, JdbcTemplate)}.
+     * 请求处理完成后需以null调用以清除.
+     *
+     * @param client 客户端标识，为null则清除
+     */
+    public static void setCurrentClient(String client) {
+        if (client == null) {
+            currentClient.remove();
+        } else {
+            currentClient.set(client);
+        }
+    }
+
+    /**
+     * 获取当前线程所处理请求的客户端.
+     *
+     * @return 客户端标识，若未设置则返回null
+     */
+    public static String getCurrentClient() {
+        return currentClient.get();
+    }
+
+    /**
+     * 选择执行查询语句的数据源.
+     * 从查询语句的from与join子句中解析被查询的数据表，按表名精确匹配写入记录.
+     */
+    private JdbcTemplate readTemplate(String sql) {
+        if (replicaJdbcTemplate == null || recentWrites.isEmpty()) {
+            return replicaJdbcTemplate == null ? jdbcTemplate : replicaJdbcTemplate;
+        }
+        String client = currentClient.get();
+        long now = System.currentTimeMillis();
+        if (isRecentlyWritten(client, anyTable, now)) {
+            return jdbcTemplate;
+        }
+        Matcher matcher = readSourcePattern.matcher(sql);
+        while (matcher.find()) {
+            if (isRecentlyWritten(client, matcher.group(1).toLowerCase(Locale.ROOT), now)) {
+                return jdbcTemplate;
+            }
+        }
+        return replicaJdbcTemplate;
+    }
+
+    /**
+     * 判断数据表是否刚被客户端或不属于任何客户端的操作写入.
+     */
+    private static boolean isRecentlyWritten(String client, String tableName, long now) {
+        Long time = recentWrites.get(writeKey(null, tableName));
+        if ((time == null || now - time > readYourWritesMillis) && client != null) {
+            time = recentWrites.get(writeKey(client, tableName));
+        }
+        return time != null && now - time <= readYourWritesMillis;
+    }
+
+    private static String writeKey(String client, String tableName) {
+        return (client == null ? "" : client) + "/" + tableName;
+    }
+
+    /**
+     * 记录当前客户端写入了数据表.
+     * 同时清理过期的写入记录，每个有效时长内最多清理一次.
+     *
+     * @param tableName 数据表表名，可用``引用
+     */
+    private static void recordWrite(String tableName) {
+        long now = System.currentTimeMillis();
+        recentWrites.put(writeKey(currentClient.get(), tableName.replace("`", "").toLowerCase(Locale.ROOT)), now);
+        long last = lastSweep.get();
+        if (now - last > readYourWritesMillis && lastSweep.compareAndSet(last, now)) {
+            recentWrites.values().removeIf(time -> now - time > readYourWritesMillis);
+        }
+    }
+
+    /**
+     * 从写入语句中解析被写入的数据表并记录.
+     */
+    private static void recordWriteSQL(String sql) {
+        Matcher matcher = writeTargetPattern.matcher(sql);
+        recordWrite(matcher.find() ? matcher.group(1) : anyTable);
     }
 
     /**
@@ -40,17 +194,18 @@ public class SQLTools {
         }
         StringBuilder columnName = new StringBuilder();
         StringBuilder columnData = new StringBuilder();
+        Object[] values = new Object[keyAndValue.length / 2];
         for (int i = 0; i < keyAndValue.length; i += 2) {
             columnName.append(keyAndValue[i]);
-            columnData.append('\'');
-            columnData.append(keyAndValue[i + 1]);
-            columnData.append('\'');
+            columnData.append('?');
+            values[i / 2] = keyAndValue[i + 1];
             if (i != keyAndValue.length - 2) {
                 columnName.append(", ");
                 columnData.append(", ");
             }
         }
-        jdbcTemplate.update("insert " + tableName + "(" + columnName + ") values" + "(" + columnData + ")");
+        jdbcTemplate.update("insert " + tableName + "(" + columnName + ") values" + "(" + columnData + ")", values);
+        recordWrite(tableName);
     }
 
     /**
@@ -66,6 +221,22 @@ public class SQLTools {
             condition = " where " + condition;
         }
         jdbcTemplate.update("delete from " + tableName + condition);
+        recordWrite(tableName);
+    }
+
+    /**
+     * 从数据表删除数据.
+     *
+     * @param tableName 指定操作的数据表名
+     * @param condition 删除操作的参数化限定条件，为空将删除所有数据
+     */
+    public void delDataFromDBTable(String tableName, Condition condition) throws DataAccessException {
+        if (condition == null) {
+            jdbcTemplate.update("delete from " + tableName);
+        } else {
+            jdbcTemplate.update("delete from " + tableName + " where " + condition.clause, condition.args);
+        }
+        recordWrite(tableName);
     }
 
     /**
@@ -82,23 +253,186 @@ public class SQLTools {
         } else if (!condition.equals("")) {
             condition = " where " + condition;
         }
-        StringBuilder keys = new StringBuilder();
-        if (key.length == 1 && key[0].equals("*")) {
-            keys.append("*");
+        String sql = "select " + joinKeys(key) + " from " + tableName + condition;
+        List<Map<String, Object>> list = readTemplate(sql).queryForList(sql);
+        if (list.size() == 0) {
+            return null;
+        }
+        return list;
+    }
+
+    /**
+     * 使用参数化条件查询数据表.
+     * 语句中的值以占位符绑定，相同结构的查询可复用预编译语句.
+     *
+     * @param tableName 被查询的数据表名
+     * @param condition 参数化的查询条件，为空将查询所有数据
+     * @param key 查询数据表中指定列的列名，模糊查询仅可使用“*”
+     * @return 返回由Map构成的List集合，Map中的键与查询的key值一一对应
+     *         若无查询结果，则返回null
+     */
+    public List<Map<String, Object>> queryDBTable(String tableName, Condition condition, String... key) throws DataAccessException {
+        List<Map<String, Object>> list;
+        if (condition == null) {
+            String sql = "select " + joinKeys(key) + " from " + tableName;
+            list = readTemplate(sql).queryForList(sql);
         } else {
-            for (int i = 0; i < key.length; i++) {
-                keys.append(key[i]);
-                if (i != key.length - 1)
-                    keys.append(", ");
-            }
+            String sql = "select " + joinKeys(key) + " from " + tableName + " where " + condition.clause;
+            list = readTemplate(sql).queryForList(sql, condition.args);
+        }
+        if (list.size() == 0) {
+            return null;
+        }
+        return list;
+    }
+
+    /**
+     * 使用参数化条件查询数据表，每行映射为一个对象.
+     * 结果直接由ResultSet映射，不经过中间的Map.
+     *
+     * @param tableName 被查询的数据表名
+     * @param condition 参数化的查询条件，为空将查询所有数据
+     * @param rowMapper 行映射方式
+     * @param key 查询数据表中指定列的列名
+     * @return 映射后的对象列表，若无查询结果，则返回null
+     */
+    public <T> List<T> queryObjects(String tableName, Condition condition, RowMapper<T> rowMapper, String... key) throws DataAccessException {
+        List<T> list;
+        if (condition == null) {
+            String sql = "select " + joinKeys(key) + " from " + tableName;
+            list = readTemplate(sql).query(sql, rowMapper);
+        } else {
+            String sql = "select " + joinKeys(key) + " from " + tableName + " where " + condition.clause;
+            list = readTemplate(sql).query(sql, rowMapper, condition.args);
+        }
+        if (list.size() == 0) {
+            return null;
         }
-        List<Map<String, Object>> list = jdbcTemplate.queryForList("select " + keys + " from " + tableName + condition);
+        return list;
+    }
+
+    /**
+     * 执行参数化查询语句，每行映射为一个对象.
+     * 供联表等无法由单表查询表达的场景使用.
+     *
+     * @param sql 含占位符“?”的MySQL查询语句
+     * @param rowMapper 行映射方式
+     * @param args 与占位符一一对应的值
+     * @return 映射后的对象列表，若无查询结果，则返回null
+     */
+    public <T> List<T> querySQL(String sql, RowMapper<T> rowMapper, Object... args) throws DataAccessException {
+        List<T> list = readTemplate(sql).query(sql, rowMapper, args);
         if (list.size() == 0) {
             return null;
         }
         return list;
     }
 
+    /**
+     * 判断数据表中是否存在满足条件的数据.
+     *
+     * @param tableName 被查询的数据表名
+     * @param condition 参数化的查询条件，为空将判断数据表是否为空
+     * @return 若存在则返回true，否则返回false
+     */
+    public boolean exists(String tableName, Condition condition) throws DataAccessException {
+        List<Map<String, Object>> list;
+        if (condition == null) {
+            String sql = "select 1 from " + tableName + " limit 1";
+            list = readTemplate(sql).queryForList(sql);
+        } else {
+            String sql = "select 1 from " + tableName + " where " + condition.clause + " limit 1";
+            list = readTemplate(sql).queryForList(sql, condition.args);
+        }
+        return list.size() != 0;
+    }
+
+    /**
+     * 以流的方式查询数据表，并将结果逐行写为Json数组.
+     * 数据库按{@link #streamFetchSize}分批返回结果，每行映射后立即写出，不保留已写出的行，
+     * 占用的内存与结果行数无关.
+     *
+     * @param writer 写出结果的Json写入器
+     * @param tableName 被查询的数据表名
+     * @param condition 参数化的查询条件，为空将查询所有数据
+     * @param rowMapper 行映射方式
+     * @param key 查询数据表中指定列的列名
+     * @return 写出的行数
+     */
+    public <T extends JsonWritable> int streamToJson(JsonWriter writer, String tableName, Condition condition,
+                                                    RowMapper<T> rowMapper, String... key) throws IOException, DataAccessException {
+        String sql = "select " + joinKeys(key) + " from " + tableName + (condition == null ? "" : " where " + condition.clause);
+        Object[] args = condition == null ? new Object[0] : condition.args;
+        PreparedStatementCreator creator = connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(streamFetchSize);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement;
+        };
+        int[] rowCount = {0};
+        writer.beginArray();
+        try {
+            readTemplate(sql).query(creator, resultSet -> {
+                try {
+                    rowMapper.mapRow(resultSet, rowCount[0]++).writeTo(writer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.endArray();
+        writer.flush();
+        return rowCount[0];
+    }
+
+    /**
+     * 按自增id倒序分页查询数据表（键集分页）.
+     * 以 id &lt; cursor 定位下一页，查询耗时与页所在的位置无关，需在id字段上建有索引.
+     *
+     * @param tableName 被查询的数据表名
+     * @param condition 参数化的查询条件，为空将查询所有数据
+     * @param cursor 上一页最后一行的id，为空将查询第一页
+     * @param pageSize 每页的行数
+     * @param rowMapper 行映射方式
+     * @param idGetter 从映射后的对象中取出id的方式
+     * @param key 查询数据表中指定列的列名，需包含id
+     * @return 一页查询结果，若已无下一页则nextCursor为空
+     */
+    public <T extends JsonWritable> Page<T> queryPage(String tableName, Condition condition, Long cursor, int pageSize,
+                                                      RowMapper<T> rowMapper, ToLongFunction<T> idGetter,
+                                                      String... key) throws DataAccessException {
+        if (cursor != null) {
+            condition = condition == null ? where("id < ?", cursor) : condition.and("id < ?", cursor);
+        }
+        String sql = "select " + joinKeys(key) + " from " + tableName + (condition == null ? "" : " where " + condition.clause)
+                + " order by id desc limit ?";
+        Object[] args;
+        if (condition == null) {
+            args = new Object[]{pageSize + 1};
+        } else {
+            args = Arrays.copyOf(condition.args, condition.args.length + 1);
+            args[args.length - 1] = pageSize + 1;
+        }
+        // 多查一行以判断是否还有下一页
+        List<T> list = readTemplate(sql).query(sql, rowMapper, args);
+        if (list.size() <= pageSize) {
+            return new Page<>(list, null);
+        }
+        list = list.subList(0, pageSize);
+        return new Page<>(list, String.valueOf(idGetter.applyAsLong(list.get(pageSize - 1))));
+    }
+
+    private static String joinKeys(String... key) {
+        if (key.length == 1 && key[0].equals("*")) {
+            return "*";
+        }
+        return String.join(", ", key);
+    }
+
     /**
      * 更新数据表中的数据.
      *
@@ -111,21 +445,57 @@ public class SQLTools {
         if (keyAndValue.length % 2 != 0) {
             throw new Exception("更新数据键值组合参数个数错误");
         }
+        if (condition == null) {
+            condition = "";
+        } else if (!condition.equals("")) {
+            condition = "where " + condition;
+        }
+        jdbcTemplate.update("update " + tableName + " set " + buildSetCommand(keyAndValue) + " " + condition,
+                (Object[]) buildSetValues(keyAndValue));
+        recordWrite(tableName);
+    }
+
+    /**
+     * 使用参数化条件更新数据表中的数据.
+     *
+     * @param tableName 数据表表名
+     * @param condition 为需要更新的数据限定的参数化条件，为空将更新所有数据
+     * @param keyAndValue 键值组合，以 key, value, key, value, ... 形式组合
+     *                    若键值参数数目不为偶数，将更新失败
+     */
+    public void updateDataForDBTable(String tableName, Condition condition, String... keyAndValue) throws Exception {
+        if (keyAndValue.length % 2 != 0) {
+            throw new Exception("更新数据键值组合参数个数错误");
+        }
+        String[] values = buildSetValues(keyAndValue);
+        if (condition == null) {
+            jdbcTemplate.update("update " + tableName + " set " + buildSetCommand(keyAndValue), (Object[]) values);
+        } else {
+            Object[] args = new Object[values.length + condition.args.length];
+            System.arraycopy(values, 0, args, 0, values.length);
+            System.arraycopy(condition.args, 0, args, values.length, condition.args.length);
+            jdbcTemplate.update("update " + tableName + " set " + buildSetCommand(keyAndValue) + " where " + condition.clause, args);
+        }
+        recordWrite(tableName);
+    }
+
+    private static String buildSetCommand(String... keyAndValue) {
         StringBuilder command = new StringBuilder();
         for (int i = 0; i < keyAndValue.length; i += 2) {
             command.append(keyAndValue[i]);
-            command.append(" = '");
-            command.append(keyAndValue[i + 1]);
-            command.append('\'');
+            command.append(" = ?");
             if (i != keyAndValue.length - 2)
                 command.append(", ");
         }
-        if (condition == null) {
-            condition = "";
-        } else if (!condition.equals("")) {
-            condition = "where " + condition;
+        return command.toString();
+    }
+
+    private static String[] buildSetValues(String... keyAndValue) {
+        String[] values = new String[keyAndValue.length / 2];
+        for (int i = 0; i < keyAndValue.length; i += 2) {
+            values[i / 2] = keyAndValue[i + 1];
         }
-        jdbcTemplate.update("update " + tableName + " set " + command + " " + condition);
+        return values;
     }
 
     /**
@@ -161,6 +531,8 @@ public class SQLTools {
             location = " " + location;
         }
         jdbcTemplate.execute("alter table " + tableName + " add " + fieldAndType + constraint + defaultValue + comment + location);
+        invalidateFieldNames(tableName);
+        recordWrite(tableName);
     }
 
     /**
@@ -182,48 +554,417 @@ public class SQLTools {
             }
         }
         jdbcTemplate.execute("alter table " + tableName + stringBuilder);
+        invalidateFieldNames(tableName);
+        recordWrite(tableName);
     }
 
     /**
      * 查询指定表的字段名.
+     * 字段名在首次查询后缓存，此后不再访问information_schema；
+     * 通过本类修改表结构时缓存随之失效.
      *
      * @param tableName 数据表表名（勿用``引用）
      * @param filters 在该表中过滤掉的字段名，为空将被忽略
      * @return 包含查询结果的字符串数组，若查询结果为空，则返回null
      */
     public String[] queryFieldName(String tableName, String... filters) throws DataAccessException {
-        StringBuilder inCondition = new StringBuilder();
-        if (filters != null && filters.length != 0) {
-            inCondition.append(" and COLUMN_NAME not in (");
-            for (int i = 0; i < filters.length; i++) {
-                inCondition.append("'");
-                inCondition.append(filters[i]);
-                inCondition.append("'");
-                if (i < filters.length - 1) {
-                    inCondition.append(", ");
-                }
+        List<String> fieldNames = fieldNameCache.get(tableName);
+        if (fieldNames == null) {
+            fieldNames = jdbcTemplate.queryForList("select COLUMN_NAME from information_schema.COLUMNS"
+                    + " where TABLE_SCHEMA = database() and TABLE_NAME = ? order by ORDINAL_POSITION", String.class, tableName);
+            if (fieldNames.size() == 0) {// 数据表不存在时不缓存
+                return null;
             }
-            inCondition.append(")");
+            fieldNames = List.copyOf(fieldNames);
+            fieldNameCache.put(tableName, fieldNames);
         }
-        List<Map<String, Object>> queryList = jdbcTemplate.queryForList("select COLUMN_NAME from information_schema.COLUMNS where TABLE_NAME = '"
-                + tableName + "'" + inCondition);
-        if (queryList.size() == 0) {
-            return null;
+        List<String> filterList = filters == null ? List.of() : Arrays.asList(filters);
+        List<String> results = new ArrayList<>(fieldNames.size());
+        for (String fieldName : fieldNames) {
+            if (!filterList.contains(fieldName)) {
+                results.add(fieldName);
+            }
         }
-        String[] results = new String[queryList.size()];
-        for (int i = 0; i < queryList.size(); i++) {
-            results[i] = String.valueOf(queryList.get(i).get("COLUMN_NAME"));
+        if (results.size() == 0) {
+            return null;
         }
-        return results;
+        return results.toArray(new String[0]);
+    }
+
+    /**
+     * 使数据表的字段名缓存失效.
+     * 在本类之外修改表结构后需调用.
+     *
+     * @param tableName 数据表表名，可用``引用
+     */
+    public static void invalidateFieldNames(String tableName) {
+        fieldNameCache.remove(tableName.replace("`", ""));
+    }
+
+    /**
+     * 判断当前数据库中的数据表是否存在.
+     *
+     * @param tableName 数据表表名（勿用``引用）
+     */
+    public boolean hasTable(String tableName) throws DataAccessException {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.TABLES"
+                + " where TABLE_SCHEMA = database() and TABLE_NAME = ?", Integer.class, tableName) != 0;
+    }
+
+    /**
+     * 判断当前数据库中的数据表是否存在指定字段.
+     *
+     * @param tableName 数据表表名（勿用``引用）
+     * @param fieldName 字段名
+     */
+    public boolean hasField(String tableName, String fieldName) throws DataAccessException {
+        String[] fieldNames = queryFieldName(tableName);
+        return fieldNames != null && Arrays.asList(fieldNames).contains(fieldName);
+    }
+
+    /**
+     * 判断当前数据库中的数据表是否有以指定字段开头的索引（含主键）.
+     *
+     * @param tableName 数据表表名（勿用``引用）
+     * @param fieldName 字段名
+     */
+    public boolean hasIndexOn(String tableName, String fieldName) throws DataAccessException {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.STATISTICS"
+                + " where TABLE_SCHEMA = database() and TABLE_NAME = ? and COLUMN_NAME = ? and SEQ_IN_INDEX = 1",
+                Integer.class, tableName, fieldName) != 0;
+    }
+
+    /**
+     * 判断当前数据库中的数据表是否有主键.
+     *
+     * @param tableName 数据表表名（勿用``引用）
+     */
+    public boolean hasPrimaryKey(String tableName) throws DataAccessException {
+        return jdbcTemplate.queryForObject("select count(*) from information_schema.STATISTICS"
+                + " where TABLE_SCHEMA = database() and TABLE_NAME = ? and INDEX_NAME = 'PRIMARY'", Integer.class, tableName) != 0;
     }
 
     /**
      * 执行指定的MySQL语句.
+     * 语句可能修改任意表的结构，执行后清空所有字段名缓存.
      *
      * @param sql MySQL语句
      */
     public void executeAny(String sql) throws DataAccessException {
-        jdbcTemplate.execute(sql);
+        try {
+            jdbcTemplate.execute(sql);
+        } finally {
+            fieldNameCache.clear();
+            recordWrite(anyTable);
+        }
+    }
+
+    /**
+     * 执行指定的参数化MySQL更新语句.
+     *
+     * @param sql 含占位符“?”的MySQL语句
+     * @param args 与占位符一一对应的值
+     * @return 受影响的行数
+     */
+    public int executeUpdate(String sql, Object... args) throws DataAccessException {
+        int rows = jdbcTemplate.update(sql, args);
+        recordWriteSQL(sql);
+        return rows;
+    }
+
+    /**
+     * 在同一事务中执行操作，操作抛出异常或调用setRollbackOnly时回滚.
+     *
+     * @param action 事务中执行的操作
+     * @return 操作的返回值
+     */
+    public <T> T executeInTransaction(TransactionCallback<T> action) throws DataAccessException {
+        if (transactionTemplate == null) {
+            return action.doInTransaction(null);
+        }
+        return transactionTemplate.execute(action);
+    }
+
+    /**
+     * 批量向数据表中插入数据.
+     * 所有行使用同一条预编译语句，开启rewriteBatchedStatements后合并为一条多行insert发送.
+     *
+     * @param tableName 指定操作的数据表名
+     * @param keys 插入的字段名
+     * @param rows 每行的值，需与字段名一一对应
+     * @return 每行受影响的行数
+     */
+    public int[] batchInsert(String tableName, String[] keys, List<Object[]> rows) throws DataAccessException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        String[] placeholders = new String[keys.length];
+        Arrays.fill(placeholders, "?");
+        int[] results = jdbcTemplate.batchUpdate("insert " + tableName + "(" + String.join(", ", keys) + ") values("
+                + String.join(", ", placeholders) + ")", rows);
+        recordWrite(tableName);
+        return results;
+    }
+
+    /**
+     * 以同一条参数化更新语句批量更新数据表.
+     * 所有行使用同一条预编译语句，开启rewriteBatchedStatements后合并为一次发送.
+     *
+     * @param tableName 指定操作的数据表名
+     * @param setClause 含占位符“?”的set子句，如 count = count + ?
+     * @param conditionClause 含占位符“?”的限定条件，如 number = ?
+     * @param rows 每次更新的参数，先set子句后限定条件
+     * @return 每次更新受影响的行数
+     */
+    public int[] batchUpdate(String tableName, String setClause, String conditionClause, List<Object[]> rows) throws DataAccessException {
+        if (rows.isEmpty()) {
+            return new int[0];
+        }
+        int[] results = jdbcTemplate.batchUpdate("update " + tableName + " set " + setClause + " where " + conditionClause, rows);
+        recordWrite(tableName);
+        return results;
+    }
+
+    /**
+     * 判断主库是否允许一次发送多条语句.
+     * 需在数据源url中开启allowMultiQueries，结果按数据源缓存.
+     */
+    private boolean allowMultiQueries() {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        if (dataSource == null) {
+            return false;
+        }
+        Boolean allow = multiQueriesCache.get(dataSource);
+        if (allow == null) {
+            allow = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+                String url = connection.getMetaData().getURL();
+                return url != null && url.toLowerCase(Locale.ROOT).contains("allowmultiqueries=true");
+            });
+            multiQueriesCache.put(dataSource, Boolean.TRUE.equals(allow));
+        }
+        return Boolean.TRUE.equals(allow);
+    }
+
+    /**
+     * 开始一个多语句工作单元.
+     * 加入的语句在提交时于同一连接、同一事务中执行，连续的相同语句合并为一个批次；
+     * 主库开启allowMultiQueries时，连续的不同语句合并为一次发送.
+     *
+     * @return 工作单元
+     */
+    public UnitOfWork beginUnitOfWork() {
+        return new UnitOfWork();
+    }
+
+    /**
+     * 多语句工作单元.
+     */
+    public class UnitOfWork {
+        private final List<String> sqlList = new ArrayList<>();
+        private final List<Object[]> argsList = new ArrayList<>();
+
+        private UnitOfWork() {
+        }
+
+        /**
+         * 加入插入语句.
+         *
+         * @param tableName 指定操作的数据表名
+         * @param keyAndValue 键值组合，以 key, value, key, value, ... 形式组合
+         */
+        public UnitOfWork insert(String tableName, String... keyAndValue) throws Exception {
+            if (keyAndValue.length % 2 != 0) {
+                throw new Exception("插入数据的键值组合参数个数错误");
+            }
+            String[] keys = new String[keyAndValue.length / 2];
+            String[] placeholders = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = keyAndValue[i * 2];
+                placeholders[i] = "?";
+            }
+            return add("insert " + tableName + "(" + String.join(", ", keys) + ") values(" + String.join(", ", placeholders) + ")",
+                    (Object[]) buildSetValues(keyAndValue));
+        }
+
+        /**
+         * 加入更新语句.
+         *
+         * @param tableName 数据表表名
+         * @param condition 参数化的限定条件
+         * @param keyAndValue 键值组合，以 key, value, key, value, ... 形式组合
+         */
+        public UnitOfWork update(String tableName, Condition condition, String... keyAndValue) throws Exception {
+            if (keyAndValue.length % 2 != 0) {
+                throw new Exception("更新数据键值组合参数个数错误");
+            }
+            String[] values = buildSetValues(keyAndValue);
+            Object[] args = Arrays.copyOf(values, values.length + condition.args.length, Object[].class);
+            System.arraycopy(condition.args, 0, args, values.length, condition.args.length);
+            return add("update " + tableName + " set " + buildSetCommand(keyAndValue) + " where " + condition.clause, args);
+        }
+
+        /**
+         * 加入删除语句.
+         *
+         * @param tableName 数据表表名
+         * @param condition 参数化的限定条件
+         */
+        public UnitOfWork delete(String tableName, Condition condition) {
+            return add("delete from " + tableName + " where " + condition.clause, condition.args);
+        }
+
+        /**
+         * 加入任意参数化语句.
+         *
+         * @param sql 含占位符“?”的MySQL语句
+         * @param args 与占位符一一对应的值
+         */
+        public UnitOfWork add(String sql, Object... args) {
+            sqlList.add(sql);
+            argsList.add(args);
+            return this;
+        }
+
+        /**
+         * 在同一事务中执行所有语句，任一语句失败则全部回滚.
+         *
+         * @return 每条语句受影响的行数
+         */
+        public int[] commit() throws DataAccessException {
+            if (transactionTemplate == null) {
+                return execute();
+            }
+            return transactionTemplate.execute(status -> execute());
+        }
+
+        private int[] execute() {
+            int[] results = new int[sqlList.size()];
+            boolean multiQueries = sqlList.size() > 1 && allowMultiQueries();
+            int start = 0;
+            while (start < sqlList.size()) {
+                int end = sameStatementEnd(start);
+                if (end - start > 1) {
+                    int[] batch = jdbcTemplate.batchUpdate(sqlList.get(start), argsList.subList(start, end));
+                    System.arraycopy(batch, 0, results, start, batch.length);
+                    recordWriteSQL(sqlList.get(start));
+                    start = end;
+                    continue;
+                }
+                // 连续的不同语句，直至下一个批次
+                while (multiQueries && end < sqlList.size() && sameStatementEnd(end) - end == 1) {
+                    end++;
+                }
+                if (end - start == 1) {
+                    results[start] = jdbcTemplate.update(sqlList.get(start), argsList.get(start));
+                } else {
+                    int[] multi = executeMulti(start, end);
+                    System.arraycopy(multi, 0, results, start, multi.length);
+                }
+                for (int i = start; i < end; i++) {
+                    recordWriteSQL(sqlList.get(i));
+                }
+                start = end;
+            }
+            return results;
+        }
+
+        /**
+         * 获取从start开始的连续相同语句的结束位置（不含）.
+         */
+        private int sameStatementEnd(int start) {
+            int end = start + 1;
+            while (end < sqlList.size() && sqlList.get(end).equals(sqlList.get(start))) {
+                end++;
+            }
+            return end;
+        }
+
+        /**
+         * 将多条语句以分号连接，作为一条语句发送.
+         */
+        private int[] executeMulti(int start, int end) {
+            List<Object> args = new ArrayList<>();
+            for (int i = start; i < end; i++) {
+                args.addAll(Arrays.asList(argsList.get(i)));
+            }
+            return jdbcTemplate.execute(String.join(";\n", sqlList.subList(start, end)), (PreparedStatementCallback<int[]>) ps -> {
+                new ArgumentPreparedStatementSetter(args.toArray()).setValues(ps);
+                int[] updateCounts = new int[end - start];
+                ps.execute();
+                for (int i = 0; i < updateCounts.length; i++) {
+                    updateCounts[i] = ps.getUpdateCount();
+                    ps.getMoreResults();
+                }
+                return updateCounts;
+            });
+        }
+    }
+
+    /**
+     * 构造参数化条件.
+     *
+     * @param clause 含占位符“?”的条件语句，如 "number = ?"
+     * @param args 与占位符一一对应的值
+     * @return 参数化条件
+     */
+    public static Condition where(String clause, Object... args) {
+        return new Condition(clause, args);
+    }
+
+    /**
+     * 构造 column in (?, ?, ...) 形式的参数化条件.
+     *
+     * @param column 字段名
+     * @param values 字段的取值集合，不可为空集合
+     * @return 参数化条件
+     */
+    public static Condition whereIn(String column, Collection<?> values) {
+        StringBuilder clause = new StringBuilder(column).append(" in (");
+        for (int i = 0; i < values.size(); i++) {
+            clause.append(i == 0 ? "?" : ", ?");
+        }
+        clause.append(")");
+        return new Condition(clause.toString(), values.toArray());
+    }
+
+    /**
+     * 参数化条件，条件语句中的值以占位符“?”表示.
+     */
+    public static class Condition {
+        private final String clause;
+        private final Object[] args;
+
+        private Condition(String clause, Object[] args) {
+            this.clause = clause;
+            this.args = args == null ? new Object[0] : args;
+        }
+
+        /**
+         * 获取条件语句.
+         */
+        public String getClause() {
+            return clause;
+        }
+
+        /**
+         * 获取与占位符一一对应的值.
+         */
+        public Object[] getArgs() {
+            return args.clone();
+        }
+
+        /**
+         * 以 and 连接另一参数化条件.
+         *
+         * @param clause 含占位符“?”的条件语句
+         * @param args 与占位符一一对应的值
+         * @return 连接后的新条件
+         */
+        public Condition and(String clause, Object... args) {
+            Object[] merged = Arrays.copyOf(this.args, this.args.length + args.length);
+            System.arraycopy(args, 0, merged, this.args.length, args.length);
+            return new Condition("(" + this.clause + ") and (" + clause + ")", merged);
+        }
     }
 }
 
@@ -1,15 +1,18 @@
 package com.tdsata.ourappserver.util;
 
+import com.google.gson.Gson;
+import com.tdsata.ourappserver.bean.JsonWritable;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
 import java.security.Key;
-import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 主要API接口聚合类.
@@ -22,12 +25,60 @@ public class Server {
     private static final Tools.MyLog myLog = new Tools.MyLog(Server.class);
 
     public Server(String aesKeyStr) {
-        decryptAESKey(aesKeyStr);
+        this(aesKeyStr, null);
+    }
+
+    /**
+     * 构造Server对象，优先通过会话id取得AES密钥（协议v2），会话不存在或已失效时回退为RSA私钥解密aesKeyStr.
+     *
+     * @param aesKeyStr 以Base64编码的RSA公钥加密后的AES密钥字符串，使用会话id时可为空
+     * @param sessionId 握手时获得的会话id，旧版客户端为空
+     */
+    public Server(String aesKeyStr, String sessionId) {
+        SessionKeyCache.Entry sessionEntry = sessionStore.get(sessionId);
+        if (sessionEntry != null) {
+            keyEntry = sessionEntry;
+            aesKeyBytes = sessionEntry.getAESKeyBytes();
+            aesKey = sessionEntry.getAESKey();
+            sessionVerified = true;
+            return;
+        }
+        List<RSAKeyRing.Generation> generations = keyRing.getActiveGenerations();
+        SessionKeyCache.Entry entry = null;
+        // 先查找各代密钥的缓存，均未命中时再由新到旧依次尝试RSA私钥解密
+        for (RSAKeyRing.Generation generation : generations) {
+            entry = generation.getSessionKeys().get(aesKeyStr);
+            if (entry != null) {
+                break;
+            }
+        }
+        if (entry == null && aesKeyStr != null) {
+            Exception lastException = null;
+            for (RSAKeyRing.Generation generation : generations) {
+                try {
+                    byte[] bytes = decryptAESKey(aesKeyStr, generation.getPrivateKey());
+                    entry = generation.getSessionKeys().put(aesKeyStr, bytes);
+                    break;
+                } catch (Exception e) {
+                    lastException = e;
+                }
+            }
+            if (entry == null && lastException != null) {
+                myLog.e("解密数据获取AES密钥失败", lastException);
+            }
+        }
+        if (entry != null) {
+            keyEntry = entry;
+            aesKeyBytes = entry.getAESKeyBytes();
+            aesKey = entry.getAESKey();
+        }
     }
 
     //***************加密传输*****************
-    private static final List<RSAUpdateObserver> observers = new LinkedList<>();
+    private static final Set<RSAUpdateObserver> observers = ConcurrentHashMap.newKeySet();// 等待RSA公钥更新的长轮询请求
+    private static final Set<SseEmitter> pushEmitters = ConcurrentHashMap.newKeySet();// 已建立的服务器推送连接
     //-----------------AES------------------
+    private SessionKeyCache.Entry keyEntry = null;// AES密钥缓存条目
     private byte[] aesKeyBytes = null;// AES密钥字节数组形式
     private Key aesKey = null;// AES密钥
 
@@ -63,9 +114,7 @@ public class Server {
             if (data == null) {
                 throw new NullPointerException("待加密数据为空");
             }
-            Cipher cipher = Cipher.getInstance("AES");
-            cipher.init(Cipher.ENCRYPT_MODE, aesKey);
-            return new String(Base64.getEncoder().encode(cipher.doFinal(data.getBytes())), StandardCharsets.UTF_8);
+            return AESCipherEngine.encrypt(aesKey, data);
         } catch (Exception e) {
             myLog.e("AES加密数据失败", e);
             return null;
@@ -84,40 +133,107 @@ public class Server {
                 throw new NullPointerException("AES密钥为空");
             if (ciphertext == null)
                 throw new NullPointerException("待解密密文为空");
-            byte[] decodeCiphertextBytes = Base64.getDecoder().decode(ciphertext.getBytes(StandardCharsets.UTF_8));
-            Cipher cipher = Cipher.getInstance("AES");
-            cipher.init(Cipher.DECRYPT_MODE, aesKey);
-            return new String(cipher.doFinal(decodeCiphertextBytes), StandardCharsets.UTF_8);
+            return AESCipherEngine.decrypt(aesKey, ciphertext);
         } catch (Exception e) {
             myLog.e("AES解密数据失败", e);
             return null;
         }
     }
 
+    /**
+     * 生成以流的方式加密输出的响应体.
+     *
+     * @param body 响应体明文的写出方式
+     * @return 加密响应体，由{@link EncryptedResponseHttpMessageConverter}写入响应
+     */
+    public EncryptedResponse aesEncryptResponse(EncryptedResponse.Body body) {
+        if (aesKey == null) {
+            throw new NullPointerException("AES密钥为空");
+        }
+        return new EncryptedResponse(aesKey, body);
+    }
+
+    /**
+     * 生成加密输出已编码明文的响应体.
+     *
+     * @param plaintext 按平台默认字符集编码的明文
+     * @return 加密响应体
+     */
+    public EncryptedResponse aesEncryptBytes(byte[] plaintext) {
+        if (aesKey == null) {
+            throw new NullPointerException("AES密钥为空");
+        }
+        return new EncryptedResponse(aesKey, plaintext);
+    }
+
+    /**
+     * 生成将查询结果列表写为Json数组后以流的方式加密输出的响应体.
+     *
+     * @param gson 提供Json写出格式的Gson对象
+     * @param list 查询结果列表
+     * @return 加密响应体
+     */
+    public EncryptedResponse aesEncryptList(Gson gson, List<? extends JsonWritable> list) {
+        return aesEncryptResponse(writer -> JsonWritable.writeArray(gson.newJsonWriter(writer), list));
+    }
+
+    //-----------------会话-----------------
+    private static final long sessionIdleMillis = 1800000;// 会话空闲失效时长（30分钟）
+    private static final int maxSessionCount = 100000;// 会话数上限
+    private static final SessionStore sessionStore = new SessionStore(sessionIdleMillis, maxSessionCount);
+    private boolean sessionVerified = false;// AES密钥是否取自已通过校验的会话
+
+    /**
+     * 检查AES密钥是否取自已通过握手校验的会话.
+     *
+     * @return 若通过会话id取得AES密钥则返回true，否则返回false
+     */
+    public boolean isSessionVerified() {
+        return sessionVerified;
+    }
+
+    /**
+     * 为当前AES密钥创建会话.
+     * 仅应在AES密钥通过校验后调用.
+     *
+     * @return 会话id
+     */
+    public String openSession() {
+        if (keyEntry == null) {
+            throw new NullPointerException("AES密钥为空");
+        }
+        return sessionStore.open(keyEntry);
+    }
+
     //-----------------RSA------------------
     private static final int rsaKeySize = 1024;// RSA密钥长度
-    private static PrivateKey privateKey = null;// RSA私钥
-    private static String publicKeyStr = null;// RSA公钥字符串形式
+    private static final int sessionKeyCacheSize = 8192;// 每代RSA密钥对缓存的AES密钥数上限
+    private static final long rsaKeyGraceMillis = 120000;// 上一代RSA私钥的宽限时长（2分钟）
+    private static final RSAKeyRing keyRing = new RSAKeyRing(rsaKeySize, rsaKeyGraceMillis, sessionKeyCacheSize);
 
     /**
-     * 生成RSA密钥对.
+     * 更新RSA密钥对.
+     * 新密钥对已在后台预先生成，上一代私钥在宽限期内仍可解密.
      */
-    public synchronized static void generateRSAKeyPair() {
+    public static void generateRSAKeyPair() {
+        RSAKeyRing.Generation generation;
         try {
-            KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
-            rsa.initialize(rsaKeySize);
-            KeyPair keyPair = rsa.generateKeyPair();
-            privateKey = keyPair.getPrivate();
-            byte[] publicKeyBytes = keyPair.getPublic().getEncoded();
-            publicKeyStr = new String(Base64.getEncoder().encode(publicKeyBytes), StandardCharsets.UTF_8);
-            // 通知观察者
-            while (observers.size() > 0) {
-                observers.get(0).awake();
-                observers.remove(0);
-            }
+            generation = keyRing.rotate();
         } catch (Exception e) {
             myLog.e("生成RSA密钥对失败", e);
+            return;
         }
+        myLog.i("RSA密钥对已更新至第" + generation.getId() + "代，通知" + observers.size() + "个等待中的请求");
+        // 并行通知在此代密钥发布前加入的观察者，通知后移出
+        String publicKeyStr = generation.getPublicKeyStr();
+        observers.parallelStream()
+                .filter(observer -> observer.generationId < generation.getId())
+                .forEach(observer -> {
+                    if (observers.remove(observer)) {
+                        observer.awake(publicKeyStr);
+                    }
+                });
+        push(rsaPublicKeyEvent, publicKeyStr);
     }
 
     /**
@@ -126,61 +242,134 @@ public class Server {
      * @return RSA公钥字符串
      */
     public static String getRSAPublicKeyStr() {
-        return publicKeyStr;
+        RSAKeyRing.Generation generation = keyRing.getCurrent();
+        return generation == null ? null : generation.getPublicKeyStr();
     }
 
     /**
      * RSA私钥解密含密钥字符串以构造AES密钥.
      *
      * @param aesKeyStr 以Base64编码的RSA公钥加密后的AES密钥字符串
+     * @param privateKey 用于解密的RSA私钥
+     * @return AES密钥字节数组
+     * @throws GeneralSecurityException 私钥与加密所用公钥不匹配或解密结果不是合法的AES密钥时抛出此异常
      */
-    private void decryptAESKey(String aesKeyStr) {
-        try {
-            byte[] decodeAESKeyBytes = Base64.getDecoder().decode(aesKeyStr);
-            int maxLength = rsaKeySize / 8;
-            int mod = decodeAESKeyBytes.length % maxLength;
-            int groupNum = decodeAESKeyBytes.length / maxLength;
-            if (mod != 0) {
-                groupNum++;
-            }
-            byte[][] dataSrc = new byte[groupNum][0];
-            for (int i = 0, start = 0; i < groupNum; i++, start += maxLength) {
-                if (i != groupNum - 1 || mod == 0) {
-                    dataSrc[i] = Arrays.copyOfRange(decodeAESKeyBytes, start, start + maxLength);
-                } else {
-                    dataSrc[i] = Arrays.copyOfRange(decodeAESKeyBytes, start, start + mod);
-                }
-            }
-            Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
-            cipher.init(Cipher.DECRYPT_MODE, privateKey);
-            byte[][] cache = new byte[dataSrc.length][0];
-            aesKeyBytes = new byte[0];
-            for (int i = 0, start = 0; i < dataSrc.length; i++) {
-                cache[i] = cipher.doFinal(dataSrc[i]);
-                aesKeyBytes = Arrays.copyOf(aesKeyBytes, aesKeyBytes.length + cache[i].length);
-                System.arraycopy(cache[i], 0, aesKeyBytes, start, cache[i].length);
-                start = cache[i].length;
+    private static byte[] decryptAESKey(String aesKeyStr, PrivateKey privateKey) throws GeneralSecurityException {
+        byte[] decodeAESKeyBytes = Base64.getDecoder().decode(aesKeyStr);
+        int maxLength = rsaKeySize / 8;
+        int mod = decodeAESKeyBytes.length % maxLength;
+        int groupNum = decodeAESKeyBytes.length / maxLength;
+        if (mod != 0) {
+            groupNum++;
+        }
+        byte[][] dataSrc = new byte[groupNum][0];
+        for (int i = 0, start = 0; i < groupNum; i++, start += maxLength) {
+            if (i != groupNum - 1 || mod == 0) {
+                dataSrc[i] = Arrays.copyOfRange(decodeAESKeyBytes, start, start + maxLength);
+            } else {
+                dataSrc[i] = Arrays.copyOfRange(decodeAESKeyBytes, start, start + mod);
             }
-            aesKey = new SecretKeySpec(aesKeyBytes, "AES");
-        } catch (Exception e) {
-            myLog.e("解密数据获取AES密钥失败", e);
         }
+        Cipher cipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+        cipher.init(Cipher.DECRYPT_MODE, privateKey);
+        byte[][] cache = new byte[dataSrc.length][0];
+        byte[] aesKeyBytes = new byte[0];
+        for (int i = 0, start = 0; i < dataSrc.length; i++) {
+            cache[i] = cipher.doFinal(dataSrc[i]);
+            aesKeyBytes = Arrays.copyOf(aesKeyBytes, aesKeyBytes.length + cache[i].length);
+            System.arraycopy(cache[i], 0, aesKeyBytes, start, cache[i].length);
+            start = cache[i].length;
+        }
+        // 使用错误的私钥解密时极少数情况下填充校验也能通过，再以AES密钥长度排除
+        if (aesKeyBytes.length != 16 && aesKeyBytes.length != 24 && aesKeyBytes.length != 32) {
+            throw new InvalidKeyException("AES密钥长度错误：" + aesKeyBytes.length);
+        }
+        return aesKeyBytes;
     }
 
     //--------------RSA更新观察者--------------
+    /**
+     * 添加RSA公钥更新观察者.
+     * 观察者对应的请求完成（含超时与出错）后自动移出.
+     * 若读取当前代数后、加入观察者前恰好更新了密钥对，该次通知不会遍历到此观察者，
+     * 因此加入后再检查一次当前代数，已有更新则立即唤醒.
+     */
     public static void addRSAUpdateObserver(RSAUpdateObserver observer) {
+        RSAKeyRing.Generation current = keyRing.getCurrent();
+        observer.generationId = current == null ? 0 : current.getId();
+        observer.deferredResult.onCompletion(() -> observers.remove(observer));
         observers.add(observer);
+        RSAKeyRing.Generation latest = keyRing.getCurrent();
+        if (latest != null && latest.getId() > observer.generationId && observers.remove(observer)) {
+            observer.awake(latest.getPublicKeyStr());
+        }
+    }
+
+    /**
+     * 获取当前等待RSA公钥更新的请求数.
+     */
+    public static int getRSAUpdateObserverCount() {
+        return observers.size();
+    }
+
+    //----------------服务器推送----------------
+    /**
+     * 推送RSA公钥更新的事件名.
+     */
+    public static final String rsaPublicKeyEvent = "rsaPublicKey";
+
+    /**
+     * 添加服务器推送连接，并立即推送当前的RSA公钥.
+     * 连接完成（含超时与出错）后自动移出.
+     */
+    public static void addPushEmitter(SseEmitter emitter) {
+        emitter.onCompletion(() -> pushEmitters.remove(emitter));
+        emitter.onTimeout(() -> pushEmitters.remove(emitter));
+        emitter.onError(throwable -> pushEmitters.remove(emitter));
+        pushEmitters.add(emitter);
+        String publicKeyStr = getRSAPublicKeyStr();
+        if (publicKeyStr != null) {
+            send(emitter, rsaPublicKeyEvent, publicKeyStr);
+        }
+    }
+
+    /**
+     * 向所有服务器推送连接并行推送事件.
+     *
+     * @param eventName 事件名
+     * @param data 事件数据
+     */
+    public static void push(String eventName, String data) {
+        pushEmitters.parallelStream().forEach(emitter -> send(emitter, eventName, data));
+    }
+
+    /**
+     * 获取当前的服务器推送连接数.
+     */
+    public static int getPushEmitterCount() {
+        return pushEmitters.size();
+    }
+
+    private static void send(SseEmitter emitter, String eventName, String data) {
+        try {
+            emitter.send(SseEmitter.event().name(eventName).data(data));
+        } catch (Exception e) {
+            // 客户端已断开
+            pushEmitters.remove(emitter);
+            emitter.completeWithError(e);
+        }
     }
 
     public static class RSAUpdateObserver {
         private final DeferredResult<String> deferredResult;
+        private volatile int generationId;// 加入时的RSA密钥代数
 
         public RSAUpdateObserver(DeferredResult<String> deferredResult) {
             this.deferredResult = deferredResult;
         }
 
-        public void awake() {
-            deferredResult.setResult(Server.getRSAPublicKeyStr());
+        public void awake(String publicKeyStr) {
+            deferredResult.setResult(publicKeyStr);
         }
     }
 
@@ -197,8 +386,9 @@ public class Server {
             @Override
             public void run() {
                 try {
-                    sqlTools.updateDataForDBTable(department.getTableName(), "number = '" + account + "'",
+                    sqlTools.updateDataForDBTable(department.getTableName(), SQLTools.where("number = ?", account),
                             SQLTools.tempKey, "");
+                    AdminSessionCache.invalidate(department, account);
                 } catch (Exception e) {
                     // ignore
                 }
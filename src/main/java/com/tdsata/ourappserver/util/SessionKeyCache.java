@@ -0,0 +1,100 @@
+package com.tdsata.ourappserver.util;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 已解密AES密钥的缓存.
+ *
+ * <p>客户端在App进程存活期间始终使用同一AES密钥，因此同一aesKeyStr会被反复上传。
+ *    以aesKeyStr的SHA-256摘要为键缓存RSA私钥解密的结果，重复请求即可跳过RSA解密。
+ *    缓存仅对生成它的RSA密钥对有效，RSA密钥对更新时随之丢弃。</p>
+ */
+public class SessionKeyCache {
+    private final int maxSize;// 缓存的最大条目数
+    private final ConcurrentHashMap<String, Entry> cache;
+
+    public SessionKeyCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.cache = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 获取aesKeyStr对应的已缓存AES密钥.
+     *
+     * @param aesKeyStr 以Base64编码的RSA公钥加密后的AES密钥字符串
+     * @return 若已缓存则返回对应条目，否则返回null
+     */
+    public Entry get(String aesKeyStr) {
+        if (aesKeyStr == null) {
+            return null;
+        }
+        return cache.get(digest(aesKeyStr));
+    }
+
+    /**
+     * 缓存aesKeyStr解密后的AES密钥.
+     * 达到容量上限时随机淘汰一个已有条目.
+     *
+     * @param aesKeyStr 以Base64编码的RSA公钥加密后的AES密钥字符串
+     * @param aesKeyBytes 解密得到的AES密钥字节数组
+     * @return 新建的缓存条目
+     */
+    public Entry put(String aesKeyStr, byte[] aesKeyBytes) {
+        Entry entry = new Entry(aesKeyBytes);
+        if (cache.size() >= maxSize) {
+            Iterator<String> iterator = cache.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        cache.put(digest(aesKeyStr), entry);
+        return entry;
+    }
+
+    /**
+     * 获取当前缓存的条目数.
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    private static String digest(String aesKeyStr) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(sha256.digest(aesKeyStr.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256为JDK必须提供的算法
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 缓存条目，保存AES密钥的字节数组与密钥对象.
+     * 条目创建后不再修改，可在多个请求间共享.
+     */
+    public static class Entry {
+        private final byte[] aesKeyBytes;
+        private final Key aesKey;
+
+        private Entry(byte[] aesKeyBytes) {
+            this.aesKeyBytes = aesKeyBytes;
+            this.aesKey = new SecretKeySpec(aesKeyBytes, "AES");
+        }
+
+        public byte[] getAESKeyBytes() {
+            return aesKeyBytes;
+        }
+
+        public Key getAESKey() {
+            return aesKey;
+        }
+    }
+}
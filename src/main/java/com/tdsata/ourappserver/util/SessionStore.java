@@ -0,0 +1,115 @@
+package com.tdsata.ourappserver.util;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话存储（协议v2）.
+ *
+ * <p>客户端握手时上传RSA公钥加密的AES密钥并通过校验后，服务器端生成不透明的会话id与该AES密钥绑定；
+ *    此后的请求只需携带会话id，服务器端据此取出AES密钥，无需再进行RSA解密与校验密文解密。
+ *    会话在空闲超过指定时长后失效。</p>
+ */
+public class SessionStore {
+    private static final Tools.MyLog myLog = new Tools.MyLog(SessionStore.class);
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private final long idleMillis;// 会话空闲失效时长
+    private final int maxSize;// 会话数上限
+    private final ConcurrentHashMap<String, Session> sessions;
+
+    public SessionStore(long idleMillis, int maxSize) {
+        this.idleMillis = idleMillis;
+        this.maxSize = maxSize;
+        this.sessions = new ConcurrentHashMap<>();
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::removeExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 为AES密钥创建会话.
+     *
+     * @param entry 已解密的AES密钥
+     * @return 会话id
+     */
+    public String open(SessionKeyCache.Entry entry) {
+        if (sessions.size() >= maxSize) {
+            removeExpired();
+            if (sessions.size() >= maxSize) {
+                Iterator<String> iterator = sessions.keySet().iterator();
+                if (iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+        byte[] idBytes = new byte[24];
+        secureRandom.nextBytes(idBytes);
+        String sessionId = Base64.getUrlEncoder().withoutPadding().encodeToString(idBytes);
+        sessions.put(sessionId, new Session(entry));
+        return sessionId;
+    }
+
+    /**
+     * 获取会话绑定的AES密钥，并刷新会话的最近访问时间.
+     *
+     * @param sessionId 会话id
+     * @return 若会话存在且未失效则返回AES密钥，否则返回null
+     */
+    public SessionKeyCache.Entry get(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccess > idleMillis) {
+            sessions.remove(sessionId, session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session.entry;
+    }
+
+    /**
+     * 获取当前的会话数.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        int before = sessions.size();
+        for (Map.Entry<String, Session> session : sessions.entrySet()) {
+            if (now - session.getValue().lastAccess > idleMillis) {
+                sessions.remove(session.getKey(), session.getValue());
+            }
+        }
+        int removed = before - sessions.size();
+        if (removed > 0) {
+            myLog.d("移除" + removed + "个已失效的会话");
+        }
+    }
+
+    private static class Session {
+        private final SessionKeyCache.Entry entry;
+        private volatile long lastAccess;
+
+        private Session(SessionKeyCache.Entry entry) {
+            this.entry = entry;
+            this.lastAccess = System.currentTimeMillis();
+        }
+    }
+}
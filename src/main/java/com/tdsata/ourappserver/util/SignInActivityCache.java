@@ -0,0 +1,167 @@
+package com.tdsata.ourappserver.util;
+
+import com.tdsata.ourappserver.bean.SignInActivity;
+import org.springframework.dao.DataAccessException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 各部门签到活动列表的缓存.
+ *
+ * <p>签到活动列表的读取远多于修改，首次读取后缓存，添加或删除签到活动后使对应部门的缓存失效。
+ *    查询在映射的锁外进行，查询期间若有失效操作，则不缓存本次查询的结果，
+ *    因此数据库修改后调用失效，不会留下修改前的列表。</p>
+ *
+ * <p>签到活动标题与（id, 所属部门）的对应关系另行缓存，供签到相关接口由标题查找活动id。
+ *    标题在所有部门间唯一，该缓存以标题为键，由所有SQLTools共享，启动时（数据库迁移完成后）一次加载，
+ *    未命中时查询数据库并缓存结果；不存在的标题同样缓存（数量有上限），
+ *    因此添加或删除签到活动后均需调用{@link #invalidateIds}。
+ *    {@link #getId}只返回属于指定部门的活动id，其他部门的活动视为不存在。</p>
+ */
+public class SignInActivityCache {
+    private static final int maxAbsentTitles = 1024;// 缓存的不存在的标题数上限，达到后清空重新累积
+    private static final ConcurrentHashMap<String, ActivityId> titleToId = new ConcurrentHashMap<>();// 签到活动标题与id、所属部门的对应关系
+    private static final Set<String> absentTitles = ConcurrentHashMap.newKeySet();// 已确认不存在的签到活动标题
+    private static final AtomicLong titleChangeCount = new AtomicLong();// 添加或删除签到活动的次数，用于丢弃与之并发的查询结果
+    private final SQLTools sqlTools;
+    private final ConcurrentHashMap<Tools.DepartmentEnum, List<SignInActivity>> cache = new ConcurrentHashMap<>();
+    private final AtomicLong invalidateCount = new AtomicLong();// 签到活动列表失效的次数
+
+    public SignInActivityCache(SQLTools sqlTools) {
+        this.sqlTools = sqlTools;
+    }
+
+    /**
+     * 获取部门的签到活动列表.
+     *
+     * @param department 部门
+     * @return 不可修改的签到活动列表，若部门没有签到活动则返回空列表
+     */
+    public List<SignInActivity> get(Tools.DepartmentEnum department) throws DataAccessException {
+        List<SignInActivity> cached = cache.get(department);
+        if (cached != null) {
+            return cached;
+        }
+        long invalidateCountBefore = invalidateCount.get();
+        List<SignInActivity> activities = sqlTools.queryObjects(SQLTools.signInActivityInfo,
+                SQLTools.where("department = ?", department.name()), SignInActivity.rowMapper, SignInActivity.columns);
+        List<SignInActivity> loaded = activities == null ? Collections.emptyList() : Collections.unmodifiableList(activities);
+        // 在映射内比较失效次数，使比较与写入不被失效操作的移除打断
+        cache.compute(department, (key, old) -> old != null || invalidateCount.get() != invalidateCountBefore ? old : loaded);
+        return loaded;
+    }
+
+    /**
+     * 使部门的签到活动列表缓存失效.
+     * 需在数据库修改完成后调用.
+     *
+     * @param department 部门
+     */
+    public void invalidate(Tools.DepartmentEnum department) {
+        invalidateCount.incrementAndGet();
+        cache.remove(department);
+    }
+
+    /**
+     * 加载所有签到活动标题与id的对应关系.
+     * 需在数据库迁移完成后调用；加载期间若有签到活动被添加或删除，则放弃本次加载，由之后的查询逐个缓存.
+     *
+     * @param sqlTools 查询主库的SQLTools
+     */
+    public static void loadIds(SQLTools sqlTools) throws DataAccessException {
+        long titleChangeCountBefore = titleChangeCount.get();
+        List<Map<String, Object>> query = sqlTools.queryDBTable(SQLTools.signInActivityInfo, "", "id", "title", "department");
+        if (query == null) {
+            return;
+        }
+        for (Map<String, Object> map : query) {
+            String title = String.valueOf(map.get("title"));
+            ActivityId activityId = new ActivityId(map);
+            titleToId.compute(title, (key, old) -> old != null || titleChangeCount.get() != titleChangeCountBefore ? old : activityId);
+        }
+    }
+
+    /**
+     * 由标题获取部门的签到活动的id.
+     * 未命中时查询数据库.
+     *
+     * @param department 部门
+     * @param title 签到活动标题
+     * @return 签到活动的id，若签到活动不存在或不属于该部门则返回null
+     */
+    public Integer getId(Tools.DepartmentEnum department, String title) throws DataAccessException {
+        ActivityId activityId = lookup(title);
+        return activityId != null && department.name().equals(activityId.department) ? activityId.id : null;
+    }
+
+    /**
+     * 判断标题是否已被任一部门的签到活动使用.
+     * 未命中时查询数据库.
+     *
+     * @param title 签到活动标题
+     */
+    public boolean exists(String title) throws DataAccessException {
+        return lookup(title) != null;
+    }
+
+    private ActivityId lookup(String title) throws DataAccessException {
+        if (title == null) {
+            return null;
+        }
+        ActivityId cached = titleToId.get(title);
+        if (cached != null || absentTitles.contains(title)) {
+            return cached;
+        }
+        long titleChangeCountBefore = titleChangeCount.get();
+        List<Map<String, Object>> query = sqlTools.queryDBTable(SQLTools.signInActivityInfo,
+                SQLTools.where("title = ?", title), "id", "department");
+        if (query == null) {
+            if (absentTitles.size() >= maxAbsentTitles) {
+                absentTitles.clear();
+            }
+            // 借助titleToId对应键的锁，使比较与写入不被invalidateIds打断
+            titleToId.compute(title, (key, old) -> {
+                if (old == null && titleChangeCount.get() == titleChangeCountBefore) {
+                    absentTitles.add(title);
+                }
+                return old;
+            });
+            return null;
+        }
+        ActivityId activityId = new ActivityId(query.get(0));
+        titleToId.compute(title, (key, old) -> old != null || titleChangeCount.get() != titleChangeCountBefore ? old : activityId);
+        return activityId;
+    }
+
+    /**
+     * 使签到活动标题的缓存失效.
+     * 需在添加或删除签到活动的数据库修改完成后调用.
+     *
+     * @param titles 添加或删除的签到活动标题
+     */
+    public void invalidateIds(Iterable<String> titles) {
+        titleChangeCount.incrementAndGet();
+        for (String title : titles) {
+            titleToId.compute(title, (key, old) -> {
+                absentTitles.remove(title);
+                return null;
+            });
+        }
+    }
+
+    private static class ActivityId {
+        private final int id;
+        private final String department;// 所属部门的枚举名称，迁移前的旧活动可能为null
+
+        private ActivityId(Map<String, Object> row) {
+            this.id = Integer.parseInt(String.valueOf(row.get("id")));
+            Object department = row.get("department");
+            this.department = department == null ? null : String.valueOf(department);
+        }
+    }
+}
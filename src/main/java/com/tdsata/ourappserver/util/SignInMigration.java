@@ -0,0 +1,92 @@
+package com.tdsata.ourappserver.util;
+
+import org.springframework.dao.DataAccessException;
+
+/**
+ * 签到数据迁移工具.
+ *
+ * <p>旧结构中每个部门的签到活动统计表为每个签到活动添加一列，添加、删除活动均需修改表结构，
+ *    执行期间会阻塞对该表的签到写入。新结构将签到状态保存在部门签到记录表
+ *    (activity_id, number, status) 中，仅保存非0（已签到/迟到）的状态，活动所属部门记录在签到活动信息表中。</p>
+ *
+ * <p>迁移为离线迁移，由DatabaseInitializer在启动时执行，完成前不接受请求，旧表较大时启动相应变慢。
+ *    迁移逐个活动、按成员id分批复制旧表中的签到状态，每条语句只涉及一批成员，不会长时间锁定整张表；
+ *    复制完成后将旧表重命名为 表名_legacy。
+ *    所有步骤均可重复执行，中途失败（包括启动被中断）后重新启动即从头补齐，已复制的记录不会重复。</p>
+ *
+ * <p>旧表保留为 表名_legacy，不会被删除。如需回退至旧版本，将其重命名回原表名即可，
+ *    但迁移后新增的签到活动与签到状态只保存在新结构中，回退后将不可见。</p>
+ */
+public class SignInMigration {
+    private static final Tools.MyLog myLog = new Tools.MyLog(SignInMigration.class);
+    private static final int batchSize = 1000;// 每条复制语句涉及的成员id范围
+    private final SQLTools sqlTools;
+
+    public SignInMigration(SQLTools sqlTools) {
+        this.sqlTools = sqlTools;
+    }
+
+    /**
+     * 确保签到活动信息表记录活动所属部门.
+     */
+    public void ensureActivityDepartment() throws DataAccessException {
+        if (!sqlTools.hasField(SQLTools.signInActivityInfo, "department")) {
+            sqlTools.executeAny("alter table " + SQLTools.signInActivityInfo
+                    + " add department varchar(20) null, add index idx_department (department)");
+            myLog.i("已为" + SQLTools.signInActivityInfo + "添加department字段");
+        }
+    }
+
+    /**
+     * 确保部门签到记录表存在.
+     *
+     * @param department 部门
+     */
+    public void ensureRecordTable(Tools.DepartmentEnum department) throws DataAccessException {
+        sqlTools.executeAny("create table if not exists " + department.getSignInRecordTableName() + " ("
+                + "activity_id int not null, "
+                + "number varchar(20) not null, "
+                + "status int not null default 0, "
+                + "primary key (activity_id, number), "
+                + "index idx_number (number))");
+    }
+
+    /**
+     * 将部门的旧签到活动统计表迁移至签到记录表.
+     * 若旧表不存在（已迁移或从未创建）则不做任何操作.
+     *
+     * @param department 部门
+     */
+    public void migrate(Tools.DepartmentEnum department) throws DataAccessException {
+        String wideTable = department.getSignInTableNameWithoutSymbol();
+        if (!sqlTools.hasTable(wideTable)) {
+            return;
+        }
+        String[] activityIds = sqlTools.queryFieldName(wideTable, "number", "name", "id");
+        int count = 0;
+        long[] idRange = sqlTools.querySQL("select coalesce(min(id), 0) as minId, coalesce(max(id), 0) as maxId from "
+                + department.getSignInTableName(), (rs, rowNum) -> new long[]{rs.getLong("minId"), rs.getLong("maxId")}).get(0);
+        if (activityIds != null) {
+            for (String activityId : activityIds) {
+                int id;
+                try {
+                    id = Integer.parseInt(activityId);
+                } catch (NumberFormatException e) {
+                    myLog.w(wideTable + "中存在非签到活动字段：" + activityId);
+                    continue;
+                }
+                sqlTools.executeUpdate("update " + SQLTools.signInActivityInfo + " set department = ? where id = ? and department is null",
+                        department.name(), id);
+                String copySQL = "insert ignore into " + department.getSignInRecordTableName() + " (activity_id, number, status) "
+                        + "select ?, number, `" + id + "` from " + department.getSignInTableName()
+                        + " where id > ? and id <= ? and `" + id + "` <> 0";
+                for (long from = idRange[0] - 1; from < idRange[1]; from += batchSize) {
+                    sqlTools.executeUpdate(copySQL, id, from, from + batchSize);
+                }
+                count++;
+            }
+        }
+        sqlTools.executeAny("rename table " + department.getSignInTableName() + " to `" + wideTable + "_legacy`");
+        myLog.i("已将" + wideTable + "的" + count + "个签到活动迁移至" + department.getSignInRecordTableNameWithoutSymbol());
+    }
+}
@@ -1,18 +1,20 @@
 package com.tdsata.ourappserver.util;
 
-import com.github.aelstad.keccakj.fips202.SHA3_512;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 
 public class Tools {
     /**
      * 校验AES密钥是否正确.
+     * AES密钥取自会话时已在握手时校验过，不再重复校验.
      *
      * @param server 含有AES密钥的Server对象
      * @param verifyCiphertext 客户端使用AES密钥加密上传的"TD-SATA"密文
@@ -21,6 +23,8 @@ public class Tools {
     public static boolean verifyAESKey(Server server, String verifyCiphertext) {
         if (server.lackAESKey()) {
             return false;
+        } else if (server.isSessionVerified()) {
+            return true;
         } else {
             return "TD-SATA".equals(server.aesDecryptData(verifyCiphertext));
         }
@@ -32,6 +36,7 @@ public class Tools {
      *         验证身份时，因客户端AES密钥在登录App时便仅生成一次且在App进程终止前保持不变，
      *         因此可通过验证账号所属temp字段中的AES密钥字符串是否与上传的AES密钥字符串一致
      *         来验证。
+     *         校验通过的结果由{@link AdminSessionCache}缓存，一段时间内不再查询数据库。
      *
      * @param server 含有AES密钥的Server对象
      * @param department 账号所属部门
@@ -40,8 +45,7 @@ public class Tools {
      */
     public static boolean verifyAdministrators(Server server, SQLTools sqlTools, DepartmentEnum department, String account) {
         account = server.aesDecryptData(account);
-        Map<String, Object> user = sqlTools.queryDBTable(department.getTableName(), "number = '" + account + "'", SQLTools.tempKey).get(0);
-        return String.valueOf(user.get(SQLTools.tempKey)).equals(server.getAESKeyNoEncrypt());
+        return AdminSessionCache.verify(sqlTools, department, account, server.getAESKeyNoEncrypt());
     }
 
     //--------------------初始化数据库password和salt数据-----------------------
@@ -72,8 +76,20 @@ public class Tools {
      * @return 加密后的结果
      */
     public static String getKeccak512Password(String password, String salt) {
-        SHA3_512 keccak512 = new SHA3_512();
-        return toHexString(keccak512.digest((password + salt).getBytes()));
+        return Keccak512Hasher.digestHex(password, salt);
+    }
+
+    /**
+     * 校验密码是否与保存的Keccak512加密结果一致.
+     * 以定长时间比较摘要字节，不使用String.equals.
+     *
+     * @param storedPassword 保存的加密后的密码
+     * @param password 待校验的原密码
+     * @param salt 密码的加盐值
+     * @return 若一致则返回true，否则返回false
+     */
+    public static boolean verifyKeccak512Password(String storedPassword, String password, String salt) {
+        return Keccak512Hasher.verify(storedPassword, password, salt);
     }
 
     /**
@@ -92,16 +108,22 @@ public class Tools {
         }
     }
 
-    private static String toHexString(byte[] data) {
-        StringBuilder strHexString = new StringBuilder();
-        for (byte aByte : data) {
-            String hex = Integer.toHexString(0xff & aByte);
-            if (hex.length() == 1) {
-                strHexString.append('0');
-            }
-            strHexString.append(hex);
+    private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+    /**
+     * 将字节数组转换为小写十六进制字符串.
+     * 查表转换，不为每个字节生成临时字符串.
+     *
+     * @param data 字节数组
+     * @return 十六进制字符串
+     */
+    public static String toHexString(byte[] data) {
+        char[] chars = new char[data.length * 2];
+        for (int i = 0, j = 0; i < data.length; i++) {
+            chars[j++] = hexDigits[(data[i] >> 4) & 0x0f];
+            chars[j++] = hexDigits[data[i] & 0x0f];
         }
-        return strHexString.toString();
+        return new String(chars);
     }
 
     //--------------------------------内部类---------------------------------
@@ -117,10 +139,44 @@ public class Tools {
         PUBLICITY("publicity"),// 科宣部
         BUSINESS("business"); // 商务部
 
+        private static final Map<String, DepartmentEnum> verifyTokenMap;// 邮箱验证链接中的部门标识与部门的对应关系
+
+        static {
+            Map<String, DepartmentEnum> map = new HashMap<>();
+            for (DepartmentEnum department : values()) {
+                map.put(department.verifyToken, department);
+            }
+            verifyTokenMap = Collections.unmodifiableMap(map);
+        }
+
         private final String tableName;
+        private final String verifyToken;
 
         DepartmentEnum(String tableName) {
             this.tableName = tableName;
+            this.verifyToken = getKeccak512Password(name(), "");
+        }
+
+        /**
+         * 获取邮箱验证链接中的部门标识，即部门名的Keccak512加密结果.
+         *
+         * @return 部门标识
+         */
+        public String getVerifyToken() {
+            return verifyToken;
+        }
+
+        /**
+         * 通过邮箱验证链接中的部门标识查找部门.
+         *
+         * @param verifyToken 部门标识
+         * @return 对应的部门，若不存在则返回null
+         */
+        public static DepartmentEnum fromVerifyToken(String verifyToken) {
+            if (verifyToken == null) {
+                return null;
+            }
+            return verifyTokenMap.get(verifyToken);
         }
 
         /**
@@ -144,7 +200,28 @@ public class Tools {
         }
 
         /**
-         * 获取部门对应的签到活动统计表表名.
+         * 获取部门对应的签到记录表表名.
+         * 已通过 `表名` 引用.
+         *
+         * @return 部门签到记录表表名
+         */
+        public String getSignInRecordTableName() {
+            return "`" + tableName + "_sign_in_record`";
+        }
+
+        /**
+         * 获取部门对应的签到记录表表名.
+         * 不通过 `表名` 引用.
+         *
+         * @return 部门签到记录表表名
+         */
+        public String getSignInRecordTableNameWithoutSymbol() {
+            return tableName + "_sign_in_record";
+        }
+
+        /**
+         * 获取部门对应的旧签到活动统计表（每个活动占一列）表名.
+         * 仅供迁移至签到记录表时使用.
          * 已通过 `表名` 引用.
          *
          * @return 部门签到活动统计表表名
@@ -154,7 +231,8 @@ public class Tools {
         }
 
         /**
-         * 获取部门对应的签到活动统计表表名.
+         * 获取部门对应的旧签到活动统计表（每个活动占一列）表名.
+         * 仅供迁移至签到记录表时使用.
          * 不通过 `表名` 引用.
          *
          * @return 部门签到活动统计表表名
@@ -0,0 +1,69 @@
+package com.tdsata.ourappserver.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * SQLTools批量写入与工作单元的测试.
+ * H2不支持一次发送多条语句，工作单元中连续的不同语句逐条执行.
+ */
+class SQLToolsBatchTest {
+    private JdbcTemplate jdbcTemplate;
+    private SQLTools sqlTools;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:batch;MODE=MySQL;DB_CLOSE_DELAY=-1"));
+        jdbcTemplate.execute("drop table if exists member");
+        jdbcTemplate.execute("drop table if exists member_change_count");
+        jdbcTemplate.execute("create table member (number varchar(20) primary key, name varchar(50), count int not null default 0)");
+        jdbcTemplate.execute("create table member_change_count (change_number varchar(20) not null, change_value int not null)");
+        jdbcTemplate.update("insert into member (number, name) values ('1', 'a'), ('2', 'b')");
+        sqlTools = new SQLTools(jdbcTemplate);
+    }
+
+    private int count(String number) {
+        return jdbcTemplate.queryForObject("select count from member where number = ?", Integer.class, number);
+    }
+
+    @Test
+    void batchUpdate() {
+        int[] results = sqlTools.batchUpdate("member", "count = count + ?", "number = ?",
+                List.of(new Object[]{3, "1"}, new Object[]{-2, "2"}, new Object[]{1, "3"}));
+        assertArrayEquals(new int[]{1, 1, 0}, results);
+        assertEquals(3, count("1"));
+        assertEquals(-2, count("2"));
+    }
+
+    @Test
+    void unitOfWorkCommits() throws Exception {
+        int[] results = sqlTools.beginUnitOfWork()
+                .add("insert into member_change_count values (?, ?)", "1", 5)
+                .add("insert into member_change_count values (?, ?)", "2", 6)
+                .update("member", SQLTools.where("number = ?", "1"), "name", "c")
+                .delete("member", SQLTools.where("number = ?", "2"))
+                .commit();
+        assertArrayEquals(new int[]{1, 1, 1, 1}, results);
+        assertEquals(2, jdbcTemplate.queryForObject("select count(*) from member_change_count", Integer.class));
+        assertEquals("c", jdbcTemplate.queryForObject("select name from member where number = '1'", String.class));
+        assertEquals(1, jdbcTemplate.queryForObject("select count(*) from member", Integer.class));
+    }
+
+    @Test
+    void unitOfWorkRollsBack() throws Exception {
+        SQLTools.UnitOfWork unitOfWork = sqlTools.beginUnitOfWork()
+                .update("member", SQLTools.where("number = ?", "1"), "name", "c")
+                .add("insert into member (number, name) values (?, ?)", "2", "duplicate");
+        assertThrows(DataAccessException.class, unitOfWork::commit);
+        assertEquals("a", jdbcTemplate.queryForObject("select name from member where number = '1'", String.class));
+    }
+}
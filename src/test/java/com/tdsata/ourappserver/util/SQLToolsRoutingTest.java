@@ -0,0 +1,124 @@
+package com.tdsata.ourappserver.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * SQLTools主从库分流的测试.
+ * 主库与从库为两个独立的H2内存数据库，写入不会复制到从库，因此可由查询结果判断查询走了哪个库.
+ */
+class SQLToolsRoutingTest {
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private SQLTools sqlTools;
+
+    @BeforeEach
+    void setUp() {
+        primary = createDatabase("primary");
+        replica = createDatabase("replica");
+        sqlTools = new SQLTools(primary, replica);
+        SQLTools.setReadYourWritesMillis(3000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SQLTools.setCurrentClient(null);
+        SQLTools.setReadYourWritesMillis(3000);
+    }
+
+    private static JdbcTemplate createDatabase(String name) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // 直接建表，不经过SQLTools，避免记录不属于任何客户端的写入
+        jdbcTemplate.execute("drop table if exists member");
+        jdbcTemplate.execute("drop table if exists member_sign_in_record");
+        jdbcTemplate.execute("create table member (number varchar(20) primary key, name varchar(50))");
+        jdbcTemplate.execute("create table member_sign_in_record (activity_id int, number varchar(20), status int)");
+        jdbcTemplate.update("insert into member values ('1', ?)", name);
+        jdbcTemplate.update("insert into member_sign_in_record values (1, '1', ?)", name.equals("primary") ? 1 : 2);
+        return jdbcTemplate;
+    }
+
+    private String queryName() {
+        return sqlTools.querySQL("select name from `member` where number = ?", (rs, rowNum) -> rs.getString(1), "1").get(0);
+    }
+
+    private int queryStatus() {
+        return sqlTools.querySQL("select r.status from member_sign_in_record r where r.number = ?",
+                (rs, rowNum) -> rs.getInt(1), "1").get(0);
+    }
+
+    @Test
+    void readsGoToReplica() {
+        SQLTools.setCurrentClient("reader");
+        assertEquals("replica", queryName());
+        assertEquals(2, queryStatus());
+    }
+
+    @Test
+    void writesGoToPrimary() {
+        SQLTools.setCurrentClient("writer");
+        sqlTools.executeUpdate("insert into member values (?, ?)", "2", "new");
+        assertEquals(1, primary.queryForObject("select count(*) from member where number = '2'", Integer.class));
+        assertEquals(0, replica.queryForObject("select count(*) from member where number = '2'", Integer.class));
+    }
+
+    @Test
+    void writerReadsOwnWritesFromPrimary() {
+        SQLTools.setCurrentClient("writer-own");
+        sqlTools.executeUpdate("update member set name = ? where number = ?", "primary", "1");
+        assertEquals("primary", queryName());
+    }
+
+    @Test
+    void otherClientsStillReadReplica() {
+        SQLTools.setCurrentClient("writer-other");
+        sqlTools.executeUpdate("update member set name = ? where number = ?", "primary", "1");
+        SQLTools.setCurrentClient("reader-other");
+        assertEquals("replica", queryName());
+    }
+
+    @Test
+    void tableNamesMatchExactly() {
+        SQLTools.setCurrentClient("writer-prefix");
+        sqlTools.executeUpdate("update member set name = ? where number = ?", "primary", "1");
+        // member_sign_in_record以member开头，但未被写入
+        assertEquals(2, queryStatus());
+        sqlTools.executeUpdate("update member_sign_in_record set status = status where number = ?", "1");
+        assertEquals(1, queryStatus());
+    }
+
+    @Test
+    void joinedTablesAreChecked() {
+        SQLTools.setCurrentClient("writer-join");
+        sqlTools.executeUpdate("update member_sign_in_record set status = status where number = ?", "1");
+        List<String> names = sqlTools.querySQL("select m.name from member m left join member_sign_in_record r on r.number = m.number",
+                (rs, rowNum) -> rs.getString(1));
+        assertEquals("primary", names.get(0));
+    }
+
+    @Test
+    void windowExpires() throws InterruptedException {
+        SQLTools.setReadYourWritesMillis(50);
+        SQLTools.setCurrentClient("writer-expire");
+        sqlTools.executeUpdate("update member set name = ? where number = ?", "primary", "1");
+        assertEquals("primary", queryName());
+        Thread.sleep(100);
+        assertEquals("replica", queryName());
+    }
+
+    @Test
+    void withoutReplicaAllQueriesGoToPrimary() {
+        SQLTools single = new SQLTools(primary);
+        assertNull(SQLTools.getCurrentClient());
+        assertEquals("primary", single.querySQL("select name from member", (rs, rowNum) -> rs.getString(1)).get(0));
+    }
+}